@@ -0,0 +1,511 @@
+package pentago_twist;
+
+import boardgame.Board;
+
+/**
+ * Bitboard representation of a Pentago-Twist position: one 36-bit long per colour.
+ *
+ * Squares are numbered quadrant by quadrant rather than row by row, so quadrant q owns bits
+ * 9q..9q+8 (row-major inside the quadrant). A rotate or flip therefore only permutes the bits
+ * of one 9-bit group, and the rest of the board is untouched.
+ *
+ * The turn/winner bookkeeping follows PentagoBoardState exactly, so the two can be used
+ * interchangeably by search code. Win detection uses the line table in PentagoLines.
+ *
+ * A 64-bit Zobrist key of the pieces is kept up to date on every move. The turn player follows
+ * from the piece count, so it is not part of the key. Keys come from a fixed seed and are
+ * stable between runs.
+ */
+public class PentagoBitboard {
+    public static final int NUM_SQUARES = 36;
+    public static final int NUM_QUADS = 4;
+    public static final int QUAD_SQUARES = 9;
+    public static final long QUAD_MASK = 0x1FFL;
+    public static final long FULL_BOARD = (1L << NUM_SQUARES) - 1;
+    public static final int ROTATE = 0;
+    public static final int FLIP = 1;
+
+    // Encoded moves: bits 0-5 square, bits 6-7 quadrant, bit 8 rotate (0) / flip (1)
+    private static final int MOVE_QUAD_SHIFT = 6;
+    private static final int MOVE_OP_SHIFT = 8;
+
+    // Undo stack layout: white, black, hash, then winner/turn number/turn player packed in one long
+    private static final int UNDO_ENTRY = 4;
+
+    // Zobrist keys of every 9-bit piece pattern, indexed by colour * NUM_QUADS + quadrant.
+    // A twist then updates the key with two lookups per colour.
+    private static final long[][] QUAD_KEYS = new long[2 * NUM_QUADS][1 << QUAD_SQUARES];
+
+    // Twisted 9-bit quadrant patterns, indexed by (op << QUAD_SQUARES) | pattern
+    private static final int[] TWISTED = new int[2 << QUAD_SQUARES];
+
+    // What rotate and flip do to a quadrant, indexed by the base-3 encoding of its 9 squares
+    // (TERNARY[white pattern] + 2 * TERNARY[black pattern])
+    private static final int ROTATE_CHANGES = 1;
+    private static final int FLIP_CHANGES = 2;
+    private static final int FLIP_EQUALS_ROTATE = 4;
+    private static final int[] POWERS_OF_3 = {1, 3, 9, 27, 81, 243, 729, 2187, 6561};
+    private static final int[] TERNARY = new int[1 << QUAD_SQUARES];
+    private static final byte[] TWIST_CLASS = new byte[19683];
+
+    // Position of the k-th set bit of a byte, indexed by (byte << 3) | k
+    private static final byte[] SELECT_IN_BYTE = new byte[256 * 8];
+
+    // Square <-> (x, y) conversion, x being the row and y the column as in PentagoBoardState
+    private static final int[] SQUARE_OF = new int[NUM_SQUARES];
+    private static final int[] X_OF = new int[NUM_SQUARES];
+    private static final int[] Y_OF = new int[NUM_SQUARES];
+
+    static {
+        for (int p = 0; p < (1 << QUAD_SQUARES); p++) {
+            // Rotate: (r, c) -> (c, 2 - r); squares are grouped by how far they travel
+            TWISTED[(ROTATE << QUAD_SQUARES) | p] = ((p & 0x004) << 6) | ((p & 0x002) << 4) | ((p & 0x021) << 2) | (p & 0x010)
+                    | ((p & 0x108) >>> 2) | ((p & 0x080) >>> 4) | ((p & 0x040) >>> 6);
+            // Flip: (r, c) -> (r, 2 - c), swapping the outer columns
+            TWISTED[(FLIP << QUAD_SQUARES) | p] = ((p & 0x049) << 2) | (p & 0x092) | ((p & 0x124) >>> 2);
+        }
+
+        for (int x = 0; x < PentagoBoardState.BOARD_SIZE; x++) {
+            for (int y = 0; y < PentagoBoardState.BOARD_SIZE; y++) {
+                int quad = (x / 3) * 2 + (y / 3);
+                int sq = quad * QUAD_SQUARES + (x % 3) * 3 + (y % 3);
+                SQUARE_OF[x * PentagoBoardState.BOARD_SIZE + y] = sq;
+                X_OF[sq] = x;
+                Y_OF[sq] = y;
+            }
+        }
+
+        long seed = 0x5EED2019L;
+        for (int i = 0; i < QUAD_KEYS.length; i++) {
+            long[] squareKeys = new long[QUAD_SQUARES];
+            for (int j = 0; j < QUAD_SQUARES; j++) {
+                seed += 0x9E3779B97F4A7C15L; // SplitMix64
+                long z = seed;
+                z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+                z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+                squareKeys[j] = z ^ (z >>> 31);
+            }
+            for (int pattern = 1; pattern < QUAD_KEYS[i].length; pattern++) {
+                int low = Integer.numberOfTrailingZeros(pattern);
+                QUAD_KEYS[i][pattern] = QUAD_KEYS[i][pattern & (pattern - 1)] ^ squareKeys[low];
+            }
+        }
+
+        for (int pattern = 1; pattern < TERNARY.length; pattern++) {
+            int low = Integer.numberOfTrailingZeros(pattern);
+            TERNARY[pattern] = TERNARY[pattern & (pattern - 1)] + POWERS_OF_3[low];
+        }
+        for (int w = 0; w < TERNARY.length; w++) {
+            for (int b = 0; b < TERNARY.length; b++) {
+                if ((w & b) != 0) { continue; }
+                int rw = twistPattern(w, ROTATE);
+                int rb = twistPattern(b, ROTATE);
+                int fw = twistPattern(w, FLIP);
+                int fb = twistPattern(b, FLIP);
+                int cls = 0;
+                if (rw != w || rb != b) { cls |= ROTATE_CHANGES; }
+                if (fw != w || fb != b) { cls |= FLIP_CHANGES; }
+                if (rw == fw && rb == fb) { cls |= FLIP_EQUALS_ROTATE; }
+                TWIST_CLASS[TERNARY[w] + 2 * TERNARY[b]] = (byte) cls;
+            }
+        }
+
+        for (int b = 0; b < 256; b++) {
+            int k = 0;
+            for (int bit = 0; bit < 8; bit++) {
+                if ((b & (1 << bit)) != 0) { SELECT_IN_BYTE[(b << 3) | k++] = (byte) bit; }
+            }
+        }
+    }
+
+    private long white;
+    private long black;
+    private int turnPlayer;
+    private int turnNumber;
+    private int winner;
+    private long hash;
+    private long[] undoStack;
+    private int undoSize;
+    private int[] quadResults; // Scratch for generateDistinctMoves: up to 3 results per placement
+
+    public PentagoBitboard() {
+        this.turnPlayer = PentagoBoardState.WHITE;
+        this.turnNumber = 0;
+        this.winner = Board.NOBODY;
+    }
+
+    /**
+     * Copy a position: a handful of primitive fields. Scratch buffers and the undo stack are
+     * only allocated if the copy is used with doMove() or move generation.
+     */
+    public PentagoBitboard(PentagoBitboard other) {
+        copyFrom(other);
+    }
+
+    /**
+     * Copy another position into this one. The undo history is not copied, and this board's
+     * own history is cleared.
+     */
+    public void copyFrom(PentagoBitboard other) {
+        this.undoSize = 0;
+        this.white = other.white;
+        this.black = other.black;
+        this.hash = other.hash;
+        this.turnPlayer = other.turnPlayer;
+        this.turnNumber = other.turnNumber;
+        this.winner = other.winner;
+    }
+
+    // Square helpers
+    public static int square(int x, int y) { return SQUARE_OF[x * PentagoBoardState.BOARD_SIZE + y]; }
+    public static int squareX(int sq) { return X_OF[sq]; }
+    public static int squareY(int sq) { return Y_OF[sq]; }
+    public static int quadrantOf(int sq) { return sq / QUAD_SQUARES; }
+
+    // Move encoding helpers
+    public static int encodeMove(int sq, int quad, int op) { return sq | (quad << MOVE_QUAD_SHIFT) | (op << MOVE_OP_SHIFT); }
+    public static int moveSquare(int move) { return move & 0x3F; }
+    public static int moveQuad(int move) { return (move >>> MOVE_QUAD_SHIFT) & 0x3; }
+    public static int moveOp(int move) { return (move >>> MOVE_OP_SHIFT) & 0x1; }
+
+    // Getters
+    public long getPieces(int player) { return player == PentagoBoardState.WHITE ? white : black; }
+    public long getOccupied() { return white | black; }
+    public long getEmpty() { return ~(white | black) & FULL_BOARD; }
+    public boolean isEmpty(int sq) { return ((white | black) & (1L << sq)) == 0; }
+    public int getTurnPlayer() { return turnPlayer; }
+    public int getTurnNumber() { return turnNumber; }
+    public int getWinner() { return winner; }
+    public void setWinner(int winner) { this.winner = winner; }
+    public long getHash() { return hash; }
+
+    /**
+     * Zobrist key of a position, computed from scratch (the board keeps its own key incrementally).
+     */
+    public static long computeHash(long white, long black) {
+        long h = 0L;
+        for (int quad = 0; quad < NUM_QUADS; quad++) {
+            int shift = quad * QUAD_SQUARES;
+            h ^= QUAD_KEYS[quad][(int) ((white >>> shift) & QUAD_MASK)];
+            h ^= QUAD_KEYS[NUM_QUADS + quad][(int) ((black >>> shift) & QUAD_MASK)];
+        }
+        return h;
+    }
+
+    /**
+     * Owner of a square: WHITE, BLACK or -1 when empty.
+     */
+    public int getOwner(int sq) {
+        long bit = 1L << sq;
+        if ((white & bit) != 0) { return PentagoBoardState.WHITE; }
+        if ((black & bit) != 0) { return PentagoBoardState.BLACK; }
+        return -1;
+    }
+
+    public boolean gameOver() {
+        return ((turnNumber >= PentagoBoardState.MAX_TURNS - 1) && turnPlayer == PentagoBoardState.BLACK) || winner != Board.NOBODY;
+    }
+
+    /**
+     * Place a piece for the turn player, twist a quadrant and pass the turn.
+     * No legality checks are done here; the caller must pass an empty square.
+     * @param sq square to place on
+     * @param quad quadrant to twist
+     * @param op ROTATE (90 degrees right) or FLIP
+     */
+    public void play(int sq, int quad, int op) {
+        if (turnPlayer == PentagoBoardState.WHITE) {
+            white |= 1L << sq;
+        } else {
+            black |= 1L << sq;
+        }
+        int placedQuad = quadrantOf(sq);
+        int placedKeys = turnPlayer * NUM_QUADS + placedQuad;
+        int placedPattern = (int) ((getPieces(turnPlayer) >>> (placedQuad * QUAD_SQUARES)) & QUAD_MASK);
+        hash ^= QUAD_KEYS[placedKeys][placedPattern] ^ QUAD_KEYS[placedKeys][placedPattern ^ (1 << (sq - placedQuad * QUAD_SQUARES))];
+
+        // Twist: one table lookup per colour
+        int shift = quad * QUAD_SQUARES;
+        int whiteBefore = (int) ((white >>> shift) & QUAD_MASK);
+        int blackBefore = (int) ((black >>> shift) & QUAD_MASK);
+        int whiteAfter = TWISTED[(op << QUAD_SQUARES) | whiteBefore];
+        int blackAfter = TWISTED[(op << QUAD_SQUARES) | blackBefore];
+        long keep = ~(QUAD_MASK << shift);
+        white = (white & keep) | ((long) whiteAfter << shift);
+        black = (black & keep) | ((long) blackAfter << shift);
+        hash ^= QUAD_KEYS[quad][whiteBefore] ^ QUAD_KEYS[quad][whiteAfter]
+                ^ QUAD_KEYS[NUM_QUADS + quad][blackBefore] ^ QUAD_KEYS[NUM_QUADS + quad][blackAfter];
+        updateWinner(winner == Board.NOBODY ? PentagoLines.affectedLines(sq, quad) : null);
+        if (turnPlayer != PentagoBoardState.WHITE) { turnNumber += 1; }
+        turnPlayer = 1 - turnPlayer;
+    }
+
+    /**
+     * Write every legal move (each empty square with each of the 8 twists) into a buffer.
+     * @param buffer receives the encoded moves, must hold PentagoMoveList.MAX_MOVES entries
+     * @return number of moves written
+     */
+    public int generateMoves(int[] buffer) {
+        int n = 0;
+        long empty = getEmpty();
+        while (empty != 0) {
+            int sq = Long.numberOfTrailingZeros(empty);
+            empty &= empty - 1;
+            for (int quad = 0; quad < NUM_QUADS; quad++) {
+                buffer[n++] = encodeMove(sq, quad, ROTATE);
+                buffer[n++] = encodeMove(sq, quad, FLIP);
+            }
+        }
+        return n;
+    }
+
+    public void generateMoves(PentagoMoveList moves) {
+        moves.setSize(generateMoves(moves.getBuffer()));
+    }
+
+    /**
+     * Write one move per distinct resulting position into a buffer, without playing any move.
+     *
+     * Two moves can only lead to the same position when they place on the same square and both
+     * twists leave their quadrant unchanged, when rotate and flip agree on the same quadrant, or
+     * when they place in the same quadrant and twist that quadrant (or nothing) into the same
+     * pattern. The first two cases are read from a table of twist effects indexed by the
+     * quadrant's 3^9 pattern; the last one is checked against the few patterns already produced
+     * for that quadrant.
+     * @param buffer receives the encoded moves, must hold PentagoMoveList.MAX_MOVES entries
+     * @return number of moves written
+     */
+    public int generateDistinctMoves(int[] buffer) {
+        if (quadResults == null) { quadResults = new int[3 * QUAD_SQUARES]; }
+        int n = 0;
+        int resultCount = 0;
+        int resultQuad = -1;
+        long own = getPieces(turnPlayer);
+        long other = getPieces(1 - turnPlayer);
+        long empty = getEmpty();
+        while (empty != 0) { // Squares are quadrant-major, so placements in a quadrant come together
+            int sq = Long.numberOfTrailingZeros(empty);
+            empty &= empty - 1;
+            int placedQuad = quadrantOf(sq);
+            if (placedQuad != resultQuad) {
+                resultQuad = placedQuad;
+                resultCount = 0;
+            }
+            long placedOwn = own | (1L << sq);
+            boolean noopDone = false;
+            for (int quad = 0; quad < NUM_QUADS; quad++) {
+                int shift = quad * QUAD_SQUARES;
+                int ownPattern = (int) ((placedOwn >>> shift) & QUAD_MASK);
+                int otherPattern = (int) ((other >>> shift) & QUAD_MASK);
+                int cls = TWIST_CLASS[TERNARY[ownPattern] + 2 * TERNARY[otherPattern]];
+                for (int op = ROTATE; op <= FLIP; op++) {
+                    boolean changes = (cls & (op == ROTATE ? ROTATE_CHANGES : FLIP_CHANGES)) != 0;
+                    int result;
+                    if (!changes) { // Same position as just placing the piece
+                        if (noopDone) { continue; }
+                        noopDone = true;
+                        int placedShift = placedQuad * QUAD_SQUARES;
+                        result = (int) ((placedOwn >>> placedShift) & QUAD_MASK) << QUAD_SQUARES
+                                | (int) ((other >>> placedShift) & QUAD_MASK);
+                    } else {
+                        if (op == FLIP && (cls & FLIP_EQUALS_ROTATE) != 0) { continue; }
+                        if (quad != placedQuad) {
+                            buffer[n++] = encodeMove(sq, quad, op);
+                            continue;
+                        }
+                        result = twistPattern(ownPattern, op) << QUAD_SQUARES | twistPattern(otherPattern, op);
+                    }
+                    // Only the placed quadrant changed: check the patterns seen for it so far
+                    boolean seen = false;
+                    for (int i = 0; i < resultCount; i++) {
+                        if (quadResults[i] == result) {
+                            seen = true;
+                            break;
+                        }
+                    }
+                    if (seen) { continue; }
+                    quadResults[resultCount++] = result;
+                    buffer[n++] = encodeMove(sq, quad, op);
+                }
+            }
+        }
+        return n;
+    }
+
+    public void generateDistinctMoves(PentagoMoveList moves) {
+        moves.setSize(generateDistinctMoves(moves.getBuffer()));
+    }
+
+    /**
+     * Zobrist key of the position an encoded move leads to, without playing it.
+     * Two moves with the same key lead to the same position.
+     */
+    public long hashAfter(int move) {
+        int sq = moveSquare(move);
+        int quad = moveQuad(move);
+        int op = moveOp(move);
+        int shift = quad * QUAD_SQUARES;
+        long own = getPieces(turnPlayer) | (1L << sq);
+        long other = getPieces(1 - turnPlayer);
+        int ownKeys = turnPlayer * NUM_QUADS;
+        int otherKeys = (1 - turnPlayer) * NUM_QUADS;
+
+        // Placement
+        int placedQuad = quadrantOf(sq);
+        int placedPattern = (int) ((own >>> (placedQuad * QUAD_SQUARES)) & QUAD_MASK);
+        long h = hash ^ QUAD_KEYS[ownKeys + placedQuad][placedPattern]
+                ^ QUAD_KEYS[ownKeys + placedQuad][placedPattern ^ (1 << (sq - placedQuad * QUAD_SQUARES))];
+
+        // Twist
+        int ownPattern = (int) ((own >>> shift) & QUAD_MASK);
+        int otherPattern = (int) ((other >>> shift) & QUAD_MASK);
+        h ^= QUAD_KEYS[ownKeys + quad][ownPattern] ^ QUAD_KEYS[ownKeys + quad][twistPattern(ownPattern, op)];
+        h ^= QUAD_KEYS[otherKeys + quad][otherPattern] ^ QUAD_KEYS[otherKeys + quad][twistPattern(otherPattern, op)];
+        return h;
+    }
+
+    /**
+     * Play an encoded move in place and remember how to take it back with undoMove().
+     * Whose turn it is is not checked; the square must be empty.
+     */
+    public void doMove(int move) {
+        int sq = moveSquare(move);
+        if (!isEmpty(sq)) { throw new IllegalArgumentException("Invalid move. Square " + sq + " is occupied."); }
+        if (undoStack == null) { undoStack = new long[NUM_SQUARES * UNDO_ENTRY]; } // At most one move per square
+        undoStack[undoSize] = white;
+        undoStack[undoSize + 1] = black;
+        undoStack[undoSize + 2] = hash;
+        undoStack[undoSize + 3] = ((long) winner << 32) | ((long) turnNumber << 1) | turnPlayer;
+        undoSize += UNDO_ENTRY;
+        play(sq, moveQuad(move), moveOp(move));
+    }
+
+    /**
+     * Take back the last move played with doMove().
+     */
+    public void undoMove() {
+        if (undoSize == 0) { throw new IllegalStateException("No move to undo."); }
+        undoSize -= UNDO_ENTRY;
+        white = undoStack[undoSize];
+        black = undoStack[undoSize + 1];
+        hash = undoStack[undoSize + 2];
+        long packed = undoStack[undoSize + 3];
+        winner = (int) (packed >>> 32);
+        turnNumber = (int) (packed & 0xFFFFFFFFL) >>> 1;
+        turnPlayer = (int) (packed & 1);
+    }
+
+    /**
+     * Number of moves that can currently be taken back.
+     */
+    public int getUndoDepth() { return undoSize / UNDO_ENTRY; }
+
+    /**
+     * Update the winner after a move. Nobody had five in a row before an undecided position's
+     * move, so only the lines the move touched need checking.
+     * @param lines lines touched by the move, or null to scan the whole board
+     */
+    private void updateWinner(int[] lines) {
+        int otherPlayer = 1 - turnPlayer;
+        boolean playerWin;
+        boolean otherWin;
+        if (lines != null) {
+            playerWin = PentagoLines.hasFive(getPieces(turnPlayer), lines);
+            otherWin = PentagoLines.hasFive(getPieces(otherPlayer), lines);
+        } else {
+            playerWin = hasFive(getPieces(turnPlayer));
+            otherWin = hasFive(getPieces(otherPlayer));
+        }
+        if (playerWin) { // Current player has won
+            winner = otherWin ? Board.DRAW : turnPlayer;
+        } else if (otherWin) { // Player's move caused the opponent to win
+            winner = otherPlayer;
+        } else if (gameOver()) {
+            winner = Board.DRAW;
+        }
+    }
+
+    /**
+     * Same pieces, turn and winner. The undo history is not compared.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) { return true; }
+        if (!(o instanceof PentagoBitboard)) { return false; }
+        PentagoBitboard other = (PentagoBitboard) o;
+        return white == other.white && black == other.black && turnPlayer == other.turnPlayer
+                && turnNumber == other.turnNumber && winner == other.winner;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    /**
+     * Whether twisting the quadrant changes the board once the turn player has placed on the
+     * square, ie: whether the twist is more than a plain placement (one table lookup).
+     */
+    public boolean twistChanges(int sq, int quad, int op) {
+        int shift = quad * QUAD_SQUARES;
+        int ownPattern = (int) (((getPieces(turnPlayer) | (1L << sq)) >>> shift) & QUAD_MASK);
+        int otherPattern = (int) ((getPieces(1 - turnPlayer) >>> shift) & QUAD_MASK);
+        int cls = TWIST_CLASS[TERNARY[ownPattern] + 2 * TERNARY[otherPattern]];
+        return (cls & (op == ROTATE ? ROTATE_CHANGES : FLIP_CHANGES)) != 0;
+    }
+
+    /**
+     * Index of the k-th (from 0) set bit of a bitboard, eg: selectSquare(getEmpty(), k) picks the
+     * k-th empty square. Goes a byte at a time, then finishes with a table lookup.
+     * @param k must be below Long.bitCount(bits)
+     */
+    public static int selectSquare(long bits, int k) {
+        int base = 0;
+        int count = Long.bitCount(bits & 0xFF);
+        while (count <= k) {
+            k -= count;
+            bits >>>= 8;
+            base += 8;
+            count = Long.bitCount(bits & 0xFF);
+        }
+        return base + SELECT_IN_BYTE[((int) (bits & 0xFF) << 3) | k];
+    }
+
+    /**
+     * Apply a rotate or flip to one quadrant of a colour's bitboard.
+     */
+    public static long twist(long bits, int quad, int op) {
+        int shift = quad * QUAD_SQUARES;
+        long q = TWISTED[(op << QUAD_SQUARES) | (int) ((bits >>> shift) & QUAD_MASK)];
+        return (bits & ~(QUAD_MASK << shift)) | (q << shift);
+    }
+
+    /**
+     * Apply a rotate or flip to a single 9-bit quadrant pattern (table lookup).
+     */
+    public static int twistPattern(int p, int op) {
+        return TWISTED[(op << QUAD_SQUARES) | p];
+    }
+
+    /**
+     * Number of the given player's pieces on a line (see PentagoLines for the line indices).
+     */
+    public int lineCount(int player, int line) {
+        return PentagoLines.count(getPieces(player), line);
+    }
+
+    /**
+     * Number of lines on which the given player has exactly the given number of pieces and
+     * the opponent has none, eg: countOpenLines(player, 4) counts the open fours.
+     */
+    public int countOpenLines(int player, int pieces) {
+        return PentagoLines.countOpen(getPieces(player), getPieces(1 - player), pieces);
+    }
+
+    /**
+     * Check whether a colour's bitboard holds five in a row anywhere.
+     */
+    public static boolean hasFive(long bits) {
+        return PentagoLines.hasFive(bits);
+    }
+}
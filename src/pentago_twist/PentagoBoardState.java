@@ -4,7 +4,6 @@ import boardgame.BoardState;
 import boardgame.Move;
 
 import java.util.ArrayList;
-import java.util.function.UnaryOperator;
 import java.util.Random;
 
 import java.util.Scanner;
@@ -30,63 +29,41 @@ public class PentagoBoardState extends BoardState {
         }
     }
 
-    private static final UnaryOperator<PentagoCoord> getNextHorizontal = c -> new PentagoCoord(c.getX(), c.getY()+1);
-    private static final UnaryOperator<PentagoCoord> getNextVertical = c -> new PentagoCoord(c.getX()+1, c.getY());
-    private static final UnaryOperator<PentagoCoord> getNextDiagRight = c -> new PentagoCoord(c.getX()+1, c.getY()+1);
-    private static final UnaryOperator<PentagoCoord> getNextDiagLeft = c -> new PentagoCoord(c.getX()+1, c.getY()-1);
     private static int FIRST_PLAYER = 0;
 
-    private Piece[][] board;
-    private Piece[][][] quadrants;
-    private int turnPlayer;
-    private int turnNumber;
-    private int winner;
-    private Random rand;
+    private PentagoBitboard bitboard;
+    private Random rand; // Created on first use, see getRandomMove()
 
     PentagoBoardState() {
         super();
-        this.board = new Piece[BOARD_SIZE][BOARD_SIZE];
-        for (int i = 0; i < BOARD_SIZE; i++) {
-            for (int j = 0; j < BOARD_SIZE; j++) {
-                this.board[i][j] = Piece.EMPTY;
-            }
-        }
-        this.quadrants = new Piece[NUM_QUADS][QUAD_SIZE][QUAD_SIZE];
-        for (int i = 0; i < NUM_QUADS; i++) {
-            for (int j = 0; j < QUAD_SIZE; j++) {
-                for (int k = 0; k < QUAD_SIZE; k++) {
-                    this.quadrants[i][j][k] = Piece.EMPTY;
-                }
-            }
-        }
-
-        rand = new Random(2019);
-        winner = Board.NOBODY;
-        turnPlayer = FIRST_PLAYER;
-        turnNumber = 0;
+        this.bitboard = new PentagoBitboard();
     }
 
-    // For cloning
+    // For cloning: copies the bitboard words only, the RNG and undo history are not carried over
     private PentagoBoardState(PentagoBoardState pbs) {
         super();
-        this.board = new Piece[BOARD_SIZE][BOARD_SIZE];
+        this.bitboard = new PentagoBitboard(pbs.bitboard);
+    }
+
+    /**
+     * Snapshot of the board as a piece array. The position itself lives in the bitboard,
+     * so writing into the returned array has no effect on the state.
+     */
+    public Piece[][] getBoard() {
+        Piece[][] board = new Piece[BOARD_SIZE][BOARD_SIZE];
         for (int i = 0; i < BOARD_SIZE; i++) {
-            System.arraycopy(pbs.board[i], 0, this.board[i], 0, BOARD_SIZE);
-        }
-        this.quadrants = new Piece[NUM_QUADS][QUAD_SIZE][QUAD_SIZE];
-        for (int i = 0; i < NUM_QUADS; i++) {
-            for (int j = 0; j < QUAD_SIZE; j++) {
-                System.arraycopy(pbs.quadrants[i][j], 0, this.quadrants[i][j], 0, QUAD_SIZE);
+            for (int j = 0; j < BOARD_SIZE; j++) {
+                board[i][j] = getPieceAt(i, j);
             }
         }
-
-        rand = new Random(2019);
-        this.winner = pbs.winner;
-        this.turnPlayer = pbs.turnPlayer;
-        this.turnNumber = pbs.turnNumber;
+        return board;
     }
 
-    public Piece[][] getBoard() { return this.board; }
+    /**
+     * Bitboard core of this state, for search code that wants to work on longs directly.
+     * This is the live representation: copy it before playing moves on it.
+     */
+    public PentagoBitboard getBitboard() { return this.bitboard; }
 
     @Override
     public Object clone() {
@@ -94,25 +71,28 @@ public class PentagoBoardState extends BoardState {
     }
 
     @Override
-    public int getWinner() { return winner; }
+    public int getWinner() { return bitboard.getWinner(); }
 
     @Override
-    public void setWinner(int win) { winner = win; }
+    public void setWinner(int win) { bitboard.setWinner(win); }
 
     @Override
-    public int getTurnPlayer() { return turnPlayer; }
+    public int getTurnPlayer() { return bitboard.getTurnPlayer(); }
 
     @Override
-    public int getTurnNumber() { return turnNumber; }
+    public int getTurnNumber() { return bitboard.getTurnNumber(); }
 
     @Override
-    public boolean isInitialized() { return board != null; }
+    public boolean isInitialized() { return bitboard != null; }
 
     @Override
     public int firstPlayer() { return FIRST_PLAYER; }
 
     @Override
     public Move getRandomMove() {
+        // Every state used to get its own Random(2019) up front; creating it lazily keeps the same
+        // move sequence per state while search code cloning thousands of states never pays for it.
+        if (rand == null) { rand = new Random(2019); }
         ArrayList<PentagoMove> moves = getAllLegalMoves();
         return moves.get(rand.nextInt(moves.size()));
     }
@@ -121,7 +101,14 @@ public class PentagoBoardState extends BoardState {
         if (xPos < 0 || xPos >= BOARD_SIZE || yPos < 0 || yPos >= BOARD_SIZE) {
             throw new IllegalArgumentException("Out of range");
         }
-        return board[xPos][yPos];
+        switch (bitboard.getOwner(PentagoBitboard.square(xPos, yPos))) {
+            case WHITE:
+                return Piece.WHITE;
+            case BLACK:
+                return Piece.BLACK;
+            default:
+                return Piece.EMPTY;
+        }
     }
 
     public Piece getPieceAt(PentagoCoord coord) {
@@ -130,9 +117,10 @@ public class PentagoBoardState extends BoardState {
 
     public ArrayList<PentagoMove> getAllLegalMoves() {
         ArrayList<PentagoMove> legalMoves = new ArrayList<>();
+        int turnPlayer = bitboard.getTurnPlayer();
         for (int i = 0; i < BOARD_SIZE; i++) { //Iterate through positions on board
             for (int j = 0; j < BOARD_SIZE; j++) {
-                if (board[i][j] == Piece.EMPTY) {
+                if (bitboard.isEmpty(PentagoBitboard.square(i, j))) {
 //                    for (int k = 0; k < NUM_QUADS - 1; k++) { // Iterate through valid swaps
 //                        for (int l = k+1; l < NUM_QUADS; l++) {
 //                            legalMoves.add(new PentagoMove(i, j, k, l, turnPlayer));
@@ -149,6 +137,24 @@ public class PentagoBoardState extends BoardState {
         return legalMoves;
     }
 
+    /**
+     * Generate all legal moves in encoded form into a reusable list (no allocation).
+     * Use PentagoMove.decode() to turn one back into a PentagoMove.
+     * @param moves list to fill; its previous content is discarded
+     */
+    public void getAllLegalMoves(PentagoMoveList moves) {
+        bitboard.generateMoves(moves);
+    }
+
+    /**
+     * Same as above, but keeping a single move for each distinct resulting board: twists that
+     * leave a quadrant unchanged or that rotate and flip alike are pruned analytically.
+     * @param moves list to fill; its previous content is discarded
+     */
+    public void getDistinctLegalMoves(PentagoMoveList moves) {
+        bitboard.generateDistinctMoves(moves);
+    }
+
     public boolean isLegal(PentagoMove m) {
         // for swap
         //if (m.getASwap() < 0 || m.getASwap() >= NUM_QUADS || m.getBSwap() < 0 || m.getBSwap() >= NUM_QUADS) { return false; }
@@ -157,10 +163,11 @@ public class PentagoBoardState extends BoardState {
         // update for rotate90 and flip
         if (m.getASwap() < 0 || m.getASwap() >= NUM_QUADS || m.getBSwap() < 0 || m.getBSwap() >= 2) { return false; }
 
-        PentagoCoord c = m.getMoveCoord();
-        if (c.getX() >= BOARD_SIZE || c.getX() < 0 || c.getY() < 0 || c.getY() >= BOARD_SIZE) { return false; }
-        if (turnPlayer != m.getPlayerID() || m.getPlayerID() == ILLEGAL) { return false; } //Check right player
-        return board[c.getX()][c.getY()] == Piece.EMPTY;
+        int x = m.getMoveX();
+        int y = m.getMoveY();
+        if (x >= BOARD_SIZE || x < 0 || y < 0 || y >= BOARD_SIZE) { return false; }
+        if (bitboard.getTurnPlayer() != m.getPlayerID() || m.getPlayerID() == ILLEGAL) { return false; } //Check right player
+        return bitboard.isEmpty(PentagoBitboard.square(x, y));
     }
 
     /**
@@ -170,160 +177,51 @@ public class PentagoBoardState extends BoardState {
      */
     public boolean isPlaceLegal(PentagoCoord c) {
         if (c.getX() >= BOARD_SIZE || c.getX() < 0 || c.getY() < 0 || c.getY() >= BOARD_SIZE) { return false; }
-        return board[c.getX()][c.getY()] == Piece.EMPTY;
+        return bitboard.isEmpty(PentagoBitboard.square(c.getX(), c.getY()));
     }
 
     public void processMove(PentagoMove m) throws IllegalArgumentException {
         if (!isLegal(m)) { throw new IllegalArgumentException("Invalid move. Move: " + m.toPrettyString()); }
-        updateQuadrants(m);
-        updateWinner();
-        if (turnPlayer != FIRST_PLAYER) { turnNumber += 1; } // Update the turn number if needed
-        turnPlayer = 1 - turnPlayer; // Swap player
+        bitboard.play(PentagoBitboard.square(m.getMoveX(), m.getMoveY()), m.getASwap(), m.getBSwap());
     }
 
     /**
-     * Updates the appropriate quandrant based on the location of the move m
-     * @param m: Pentago move
+     * Play an encoded move (see PentagoBitboard.encodeMove) in place, without allocating.
+     * Meant for search code: the move is played for the turn player and can be taken back
+     * with undoMove(). Moves applied with processMove() cannot be undone.
+     * @param encodedMove
      */
-    private void updateQuadrants(PentagoMove m) {
-        Piece turnPiece = turnPlayer == WHITE ? Piece.WHITE : Piece.BLACK;
-        int x = m.getMoveCoord().getX();
-        int y = m.getMoveCoord().getY();
-        boolean isLeftQuadMove = y / 3 == 0;
-        boolean isTopQuadMove = x / 3 == 0;
-        if (isLeftQuadMove && isTopQuadMove) { //Top left quadrant
-            quadrants[0][x][y] = turnPiece;
-        } else if (!isLeftQuadMove && isTopQuadMove) { //Top right quadrant
-            quadrants[1][x][y % QUAD_SIZE] = turnPiece;
-        } else if (isLeftQuadMove) { //Bottom left quadrant
-            quadrants[2][x % QUAD_SIZE][y] = turnPiece;
-        } else { //Bottom right quadrant
-            quadrants[3][x % QUAD_SIZE][y % QUAD_SIZE] = turnPiece;
-        }
-
-        //Swapping mechanism
-        int a = m.getASwap();
-        int b = m.getBSwap();
-        Piece[][] tmp = quadrants[a];
-        //quadrants[a] = quadrants[b];
-        //quadrants[b] = tmp;
-        Piece[][] tmp2 = new Piece [quadrants[a].length][quadrants[a].length];
-
-
-        int N = tmp.length;
-        // check
-//        for (int j = 0; j < N; j++)
-//        {
-//            for (int i = 0; i <N; i++){
-//                System.out.print(tmp[j][i]);
-//            }
-//        }
-        switch (b){
-            case 0:
-                // rotate 90 right
-                //System.out.println("Rotate");
-                for (int j = 0; j < N; j++)
-                {
-                    for (int i = N - 1; i >= 0; i--) {
-                        //System.arraycopy(quadrants[a][j],  N - 1 - i, tmp[i], j, 1);
-                        System.arraycopy(tmp[i], j, tmp2[j],  N - 1 - i, 1);
-                    }
-                }
-                break;
-            case 1:
-               // flip a quadrant
-                //System.out.println("Flip");
-                for (int j = 0; j < N; j++)
-                {
-                    for (int i = N - 1; i >= 0; i--) {
-                        //System.arraycopy(quadrants[a][j],  N - 1 - i, tmp[i], j, 1);
-                        System.arraycopy(tmp[j], i, tmp2[j],  N - 1 - i, 1);
-                    }
-                }
-                break;
-
-        }
-
-
-        quadrants[a] = tmp2;
-        buildBoardFromQuadrants();
+    public void doMove(int encodedMove) throws IllegalArgumentException {
+        bitboard.doMove(encodedMove);
     }
 
-
-
-    private void buildBoardFromQuadrants() {
-        for (int i = 0; i < BOARD_SIZE; i++) {
-            int quadrantRow = i < 3 ? i : i - 3;
-            int leftQuad = i < 3 ? 0 : 2;
-            int rightQuad = i < 3 ? 1 : 3;
-            System.arraycopy(quadrants[leftQuad][quadrantRow], 0, board[i], 0, 3);
-            System.arraycopy(quadrants[rightQuad][quadrantRow], 0, board[i], 3, 3);
-        }
-    }
-
-    private void updateWinner() {
-        boolean playerWin = checkVerticalWin(turnPlayer) || checkHorizontalWin(turnPlayer) || checkDiagRightWin(turnPlayer) || checkDiagLeftWin(turnPlayer);
-        int otherPlayer = 1 - turnPlayer;
-        boolean otherWin = checkVerticalWin(otherPlayer) || checkHorizontalWin(otherPlayer) || checkDiagRightWin(otherPlayer) || checkDiagLeftWin(otherPlayer);
-        if (playerWin) { // Current player has won
-            winner = otherWin ? Board.DRAW : turnPlayer;
-        } else if (otherWin) { // Player's move caused the opponent to win
-            winner = otherPlayer;
-        } else if (gameOver()) {
-            winner = Board.DRAW;
-        }
+    /**
+     * Take back the last move played with doMove().
+     */
+    public void undoMove() throws IllegalStateException {
+        bitboard.undoMove();
     }
 
     @Override
     public boolean gameOver() {
-        return ((turnNumber >= MAX_TURNS - 1) && turnPlayer == BLACK) || winner != Board.NOBODY;
-    }
-
-    private boolean checkVerticalWin(int player) {
-        return checkWinRange(player, 0, 2, 0, BOARD_SIZE, getNextVertical);
-    }
-
-    private boolean checkHorizontalWin(int player) {
-        return checkWinRange(player, 0, BOARD_SIZE, 0, 2, getNextHorizontal);
-    }
-
-    private boolean checkDiagRightWin(int player) {
-        return checkWinRange(player, 0, 2, 0, 2, getNextDiagRight);
+        return bitboard.gameOver();
     }
 
-    private boolean checkDiagLeftWin(int player) {
-        return checkWinRange(player, 0 ,2, BOARD_SIZE - 2, BOARD_SIZE, getNextDiagLeft);
-    }
+    /**
+     * 64-bit Zobrist key of the position, updated incrementally on every move.
+     * Equal positions have equal keys, whatever move order led to them.
+     */
+    public long getHash() { return bitboard.getHash(); }
 
-    private boolean checkWinRange(int player, int xStart, int xEnd, int yStart, int yEnd, UnaryOperator<PentagoCoord> direction) {
-        boolean win = false;
-        for (int i = xStart; i < xEnd; i++) {
-            for (int j = yStart; j < yEnd; j++) {
-                win |= checkWin(player, new PentagoCoord(i, j), direction);
-                if (win) { return true; }
-            }
-        }
-        return false;
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) { return true; }
+        if (!(o instanceof PentagoBoardState)) { return false; }
+        return bitboard.equals(((PentagoBoardState) o).bitboard);
     }
 
-    private boolean checkWin(int player, PentagoCoord start, UnaryOperator<PentagoCoord> direction) {
-        int winCounter = 0;
-        Piece currColour = player == 0 ? Piece.WHITE : Piece.BLACK;
-        PentagoCoord current = start;
-        while(true) {
-            try {
-                if (currColour == this.board[current.getX()][current.getY()]) {
-                    winCounter++;
-                    current = direction.apply(current);
-                } else {
-                    break;
-                }
-            } catch (IllegalArgumentException e) { //We have run off the board
-                break;
-            }
-        }
-        return winCounter >= 5;
-    }
+    @Override
+    public int hashCode() { return bitboard.hashCode(); }
 
     public void printBoard() {
         System.out.println(this.toString());
@@ -338,7 +236,7 @@ public class PentagoBoardState extends BoardState {
             boardString.append("|");
             for (int j = 0; j < BOARD_SIZE; j++) {
                 boardString.append(" ");
-                boardString.append(board[i][j].toString());
+                boardString.append(getPieceAt(i, j).toString());
                 boardString.append(" |");
                 if (j == QUAD_SIZE - 1) {
                     boardString.append("|");
@@ -358,7 +256,7 @@ public class PentagoBoardState extends BoardState {
 
         Scanner scanner = new Scanner(System.in);
         int id = FIRST_PLAYER;
-        while(pbs.winner == Board.NOBODY) {
+        while(pbs.getWinner() == Board.NOBODY) {
             System.out.print("Enter move (x y a b): ");
             String moveStr = scanner.nextLine();
             PentagoMove m = new PentagoMove(moveStr + " " + id);
@@ -371,7 +269,7 @@ public class PentagoBoardState extends BoardState {
             id = 1 - id;
         }
 
-        switch(pbs.winner) {
+        switch(pbs.getWinner()) {
             case WHITE:
                 System.out.println("White wins.");
                 break;
@@ -0,0 +1,142 @@
+package pentago_twist;
+
+/**
+ * Static table of the 32 five-in-a-row lines of the 6x6 board, as PentagoBitboard square masks.
+ *
+ * Lines 0-11 are horizontal, 12-23 vertical, 24-31 diagonal. Counting a colour's pieces on a
+ * line is a single popcount of the masked bitboard, so heuristics can look at line occupancy
+ * (open threes, open fours, ...) without walking the board.
+ */
+public class PentagoLines {
+    public static final int NUM_LINES = 32;
+    public static final int LINE_LENGTH = 5;
+
+    private static final long[] MASKS = new long[NUM_LINES];
+    private static final int[][] SQUARES = new int[NUM_LINES][LINE_LENGTH];
+    private static final int[][] LINES_THROUGH = new int[PentagoBitboard.NUM_SQUARES][];
+    private static final int[][] LINES_THROUGH_QUAD = new int[PentagoBitboard.NUM_QUADS][];
+    // Lines a move can change, indexed by placed square * NUM_QUADS + twisted quadrant
+    private static final int[][] AFFECTED = new int[PentagoBitboard.NUM_SQUARES * PentagoBitboard.NUM_QUADS][];
+
+    static {
+        int n = 0;
+        for (int x = 0; x < 6; x++) { // Horizontal
+            for (int y = 0; y < 2; y++) { addLine(n++, x, y, 0, 1); }
+        }
+        for (int x = 0; x < 2; x++) { // Vertical
+            for (int y = 0; y < 6; y++) { addLine(n++, x, y, 1, 0); }
+        }
+        for (int x = 0; x < 2; x++) { // Diagonals
+            for (int y = 0; y < 2; y++) { addLine(n++, x, y, 1, 1); }
+            for (int y = 4; y < 6; y++) { addLine(n++, x, y, 1, -1); }
+        }
+
+        for (int sq = 0; sq < PentagoBitboard.NUM_SQUARES; sq++) {
+            LINES_THROUGH[sq] = linesCrossing(1L << sq);
+        }
+        for (int quad = 0; quad < PentagoBitboard.NUM_QUADS; quad++) {
+            LINES_THROUGH_QUAD[quad] = linesCrossing(PentagoBitboard.QUAD_MASK << (quad * PentagoBitboard.QUAD_SQUARES));
+        }
+        // A move only changes the placed square and the twisted quadrant
+        for (int sq = 0; sq < PentagoBitboard.NUM_SQUARES; sq++) {
+            for (int quad = 0; quad < PentagoBitboard.NUM_QUADS; quad++) {
+                long changed = (1L << sq) | (PentagoBitboard.QUAD_MASK << (quad * PentagoBitboard.QUAD_SQUARES));
+                AFFECTED[sq * PentagoBitboard.NUM_QUADS + quad] = linesCrossing(changed);
+            }
+        }
+    }
+
+    private static int[] linesCrossing(long squares) {
+        int count = 0;
+        for (int line = 0; line < NUM_LINES; line++) {
+            if ((MASKS[line] & squares) != 0) { count++; }
+        }
+        int[] lines = new int[count];
+        count = 0;
+        for (int line = 0; line < NUM_LINES; line++) {
+            if ((MASKS[line] & squares) != 0) { lines[count++] = line; }
+        }
+        return lines;
+    }
+
+    private static void addLine(int line, int x, int y, int dx, int dy) {
+        for (int i = 0; i < LINE_LENGTH; i++) {
+            int sq = PentagoBitboard.square(x + i * dx, y + i * dy);
+            SQUARES[line][i] = sq;
+            MASKS[line] |= 1L << sq;
+        }
+    }
+
+    private PentagoLines() {}
+
+    public static long mask(int line) { return MASKS[line]; }
+
+    /**
+     * Squares of a line, in board order. The returned array is shared; do not modify it.
+     */
+    public static int[] squares(int line) { return SQUARES[line]; }
+
+    /**
+     * Indices of the lines going through a square. The returned array is shared; do not modify it.
+     */
+    public static int[] linesThrough(int sq) { return LINES_THROUGH[sq]; }
+
+    /**
+     * Indices of the lines crossing a quadrant. The returned array is shared; do not modify it.
+     */
+    public static int[] linesThroughQuadrant(int quad) { return LINES_THROUGH_QUAD[quad]; }
+
+    /**
+     * Indices of the lines that placing on a square and then twisting a quadrant can change:
+     * the lines through the square plus the lines crossing the quadrant.
+     * The returned array is shared; do not modify it.
+     */
+    public static int[] affectedLines(int sq, int quad) { return AFFECTED[sq * PentagoBitboard.NUM_QUADS + quad]; }
+
+    /**
+     * Check whether a colour's bitboard holds five in a row anywhere.
+     */
+    public static boolean hasFive(long bits) {
+        for (int line = 0; line < NUM_LINES; line++) {
+            if ((bits & MASKS[line]) == MASKS[line]) { return true; }
+        }
+        return false;
+    }
+
+    /**
+     * Check whether a colour's bitboard holds five in a row on one of the given lines.
+     */
+    public static boolean hasFive(long bits, int[] lines) {
+        for (int line : lines) {
+            if ((bits & MASKS[line]) == MASKS[line]) { return true; }
+        }
+        return false;
+    }
+
+    /**
+     * Number of a colour's pieces on a line.
+     */
+    public static int count(long bits, int line) {
+        return Long.bitCount(bits & MASKS[line]);
+    }
+
+    /**
+     * Check if a line is still open for a colour, ie: holds none of the opponent's pieces.
+     */
+    public static boolean isOpen(long opponentBits, int line) {
+        return (opponentBits & MASKS[line]) == 0;
+    }
+
+    /**
+     * Number of open lines on which a colour has exactly the given number of pieces.
+     * For example countOpen(own, opp, 4) counts the open fours.
+     */
+    public static int countOpen(long bits, long opponentBits, int pieces) {
+        int total = 0;
+        for (int line = 0; line < NUM_LINES; line++) {
+            long mask = MASKS[line];
+            if ((opponentBits & mask) == 0 && Long.bitCount(bits & mask) == pieces) { total++; }
+        }
+        return total;
+    }
+}
@@ -40,9 +40,31 @@ public class PentagoMove extends Move {
         }
     }
 
+    /**
+     * Convert an encoded move (see PentagoBitboard.encodeMove) back to a PentagoMove,
+     * eg: to hand a search result back to the server.
+     */
+    public static PentagoMove decode(int move, int playerId) {
+        int sq = PentagoBitboard.moveSquare(move);
+        return new PentagoMove(PentagoBitboard.squareX(sq), PentagoBitboard.squareY(sq),
+                PentagoBitboard.moveQuad(move), PentagoBitboard.moveOp(move), playerId);
+    }
+
+    /**
+     * Encoded form of this move, for PentagoBoardState.doMove() and the search code.
+     * The coordinates must be on the board.
+     */
+    public int encode() {
+        return PentagoBitboard.encodeMove(PentagoBitboard.square(xMove, yMove), aSwap, bSwap);
+    }
+
     // Getters
     public PentagoCoord getMoveCoord() {
         return new PentagoCoord(this.xMove, this.yMove); }
+    public int getMoveX() {
+        return this.xMove; }
+    public int getMoveY() {
+        return this.yMove; }
     public int getASwap() {
         return this.aSwap; }
     public int getBSwap() {
@@ -0,0 +1,61 @@
+package pentago_twist;
+
+/**
+ * Reusable list of encoded moves (see PentagoBitboard.encodeMove) backed by an int array.
+ * Move generation writes straight into the buffer, so a list can be cleared and refilled
+ * at every ply without allocating.
+ */
+public class PentagoMoveList {
+    // Every empty square times every quadrant twist
+    public static final int MAX_MOVES = PentagoBitboard.NUM_SQUARES * PentagoBitboard.NUM_QUADS * 2;
+
+    private final int[] moves;
+    private int size;
+
+    public PentagoMoveList() {
+        this(new int[MAX_MOVES]);
+    }
+
+    /**
+     * Wrap a caller-supplied buffer. It must hold at least MAX_MOVES entries to receive a full
+     * move generation.
+     */
+    public PentagoMoveList(int[] buffer) {
+        this.moves = buffer;
+        this.size = 0;
+    }
+
+    public int size() { return size; }
+    public boolean isEmpty() { return size == 0; }
+    public int get(int i) { return moves[i]; }
+    public void set(int i, int move) { moves[i] = move; }
+    public void clear() { size = 0; }
+    public void add(int move) { moves[size++] = move; }
+
+    /**
+     * Underlying buffer; only the first size() entries are meaningful.
+     */
+    public int[] getBuffer() { return moves; }
+
+    void setSize(int size) { this.size = size; }
+
+    /**
+     * Keep only the first newSize moves.
+     */
+    public void truncate(int newSize) {
+        if (newSize < size) { size = newSize; }
+    }
+
+    /**
+     * Remove the move at index i by moving the last move into its slot (order is not kept).
+     */
+    public void removeSwap(int i) {
+        moves[i] = moves[--size];
+    }
+
+    public void swap(int i, int j) {
+        int tmp = moves[i];
+        moves[i] = moves[j];
+        moves[j] = tmp;
+    }
+}
@@ -0,0 +1,352 @@
+package student_player;
+
+import boardgame.Board;
+import boardgame.Move;
+import pentago_twist.PentagoBitboard;
+import pentago_twist.PentagoBoardState;
+import pentago_twist.PentagoMove;
+import pentago_twist.PentagoMoveList;
+
+import java.util.Arrays;
+
+public class AlphaBetaSearch {
+
+    /**
+     * This AlphaBetaSearch.java class is a second search engine, an alternative to MCTSExecuter (see
+     * MyTools.USE_ALPHA_BETA): iterative-deepening negamax with alpha-beta pruning on a PentagoBitboard.
+     *
+     * - Iterative deepening: search depth 1, 2, 3... until the time allowed is used up; the best move of the deepest
+     * finished iteration is played (or a better one already found by the unfinished iteration).
+     * - Principal variation search: the first (best ordered) move is searched with the full window, the others with
+     * a null window first, and only searched again if they turn out better.
+     * - Move ordering: the move stored for the position in the transposition table, then two killer moves per ply
+     * (moves that caused a cutoff at the same ply elsewhere), then the history heuristic (cutoffs so far, by move).
+     * - Transposition table: positions already searched (by Zobrist key) with their depth, score bound and best move,
+     * kept from one move to the next (see TranspositionTable, which several searchers can share).
+     * - Leaves are scored with StaticEvaluator; a side to move that can win at once is scored as a win right away.
+     *
+     * Moves are the distinct moves of each position, made and taken back in place, with one move buffer per ply,
+     * so the search itself allocates nothing.
+     */
+
+    // Scores
+    private static final int INFINITY = 1000000;
+    private static final int WIN_SCORE = 100000; // minus the number of plies to the win
+    private static final int WIN_BOUND = WIN_SCORE - 1000; // scores beyond are forced wins or losses
+    private static final int EVAL_SCALE = 1000; // StaticEvaluator logit units to integer score
+
+    private static final int NO_MOVE = -1;
+    private static final int MAX_PLY = PentagoBitboard.NUM_SQUARES + 1;
+    private static final int MOVE_KEYS = 1 << 9; // encoded moves (see PentagoBitboard.encodeMove)
+    private static final int TIME_CHECK_MASK = 1023; // check the clock every 1024 nodes
+
+    // Timing
+    private long start_time;
+    private int time_allowed;
+    private long deadline;
+    private boolean aborted;
+    private long nodes;
+
+    // Search state, reused from one search to the next
+    private PentagoBitboard board = new PentagoBitboard();
+    private int[][] moves = new int[MAX_PLY][PentagoMoveList.MAX_MOVES];
+    private int[][] move_scores = new int[MAX_PLY][PentagoMoveList.MAX_MOVES];
+    private int[][] killers = new int[MAX_PLY][2];
+    private int[][] history = new int[2][MOVE_KEYS];
+    private int iteration_best;
+    private StaticEvaluator evaluator = StaticEvaluator.getDefault();
+    private TranspositionTable table;
+
+    /**
+     * Constructor, with a transposition table of its own (MyTools.TT_SIZE_MB).
+     */
+    public AlphaBetaSearch() {
+        this(new TranspositionTable(MyTools.TT_SIZE_MB));
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param table transposition table, can be shared with other searchers
+     */
+    public AlphaBetaSearch(TranspositionTable table) {
+        super();
+        this.table = table;
+        MyTools.print("Initializing AlphaBetaSearch agent.");
+    }
+
+    /**
+     * Search the position until the time allowed is used up and return the best move found.
+     *
+     * @param pbs
+     * @return
+     */
+    public Move getOptimalMove(PentagoBoardState pbs) {
+        deadline = start_time + time_allowed;
+        aborted = false;
+        nodes = 0;
+        table.newSearch();
+        board.copyFrom(pbs.getBitboard());
+        for (int[] k : killers) {
+            Arrays.fill(k, NO_MOVE);
+        }
+        // Keep some of the history from last turn, the moves are often still good
+        for (int[] h : history) {
+            for (int m = 0; m < MOVE_KEYS; m++) {
+                h[m] >>= 2;
+            }
+        }
+
+        int best_move = NO_MOVE;
+        int remaining = Long.bitCount(board.getEmpty());
+        for (int depth = 1; depth <= remaining; depth++) {
+            iteration_best = NO_MOVE;
+            int score = searchRoot(depth, best_move);
+            if (aborted) {
+                // A move that beat the previous best with the first moves searched is still better
+                if (iteration_best != NO_MOVE) {
+                    best_move = iteration_best;
+                }
+                break;
+            }
+            best_move = iteration_best;
+            MyTools.print("Alpha-beta depth " + depth + ": score " + score + ", " + nodes + " nodes, "
+                    + (System.currentTimeMillis() - start_time) + " ms.");
+            if (Math.abs(score) >= WIN_BOUND) {
+                break; // the game is solved from here
+            }
+            if (System.currentTimeMillis() - start_time > time_allowed / 2) {
+                break; // the next iteration would not finish
+            }
+        }
+
+        if (best_move == NO_MOVE) {
+            return pbs.getRandomMove();
+        }
+        return PentagoMove.decode(best_move, pbs.getTurnPlayer());
+    }
+
+    /**
+     * Search all the root moves to the given depth, the previous best move first.
+     *
+     * @param depth
+     * @param previous_best best move of the last iteration, or NO_MOVE
+     * @return score of the root position
+     */
+    //-------------------------------------------
+    private int searchRoot(int depth, int previous_best) {
+        int n = board.generateDistinctMoves(moves[0]);
+        scoreMoves(0, n, previous_best);
+        int alpha = -INFINITY;
+        int beta = INFINITY;
+        for (int i = 0; i < n; i++) {
+            int move = pickNextMove(0, i, n);
+            board.doMove(move);
+            int score;
+            if (i == 0) {
+                score = -negamax(depth - 1, 1, -beta, -alpha);
+            } else {
+                score = -negamax(depth - 1, 1, -alpha - 1, -alpha);
+                if (score > alpha && !aborted) {
+                    score = -negamax(depth - 1, 1, -beta, -alpha);
+                }
+            }
+            board.undoMove();
+            if (aborted) {
+                break;
+            }
+            if (score > alpha) {
+                alpha = score;
+                iteration_best = move;
+            }
+        }
+        return alpha;
+    }
+
+    /**
+     * Negamax with alpha-beta pruning: score of the position for the side to move.
+     *
+     * @param depth plies left
+     * @param ply   plies from the root
+     * @param alpha
+     * @param beta
+     * @return
+     */
+    private int negamax(int depth, int ply, int alpha, int beta) {
+        nodes++;
+        if ((nodes & TIME_CHECK_MASK) == 0 && System.currentTimeMillis() >= deadline) {
+            aborted = true;
+        }
+        if (aborted) {
+            return 0;
+        }
+
+        // Game over (the twist can also make the side to move win)
+        int winner = board.getWinner();
+        if (winner != Board.NOBODY) {
+            if (winner == Board.DRAW) {
+                return 0;
+            }
+            return winner == board.getTurnPlayer() ? WIN_SCORE - ply : -(WIN_SCORE - ply);
+        }
+        // Side to move wins at once (played to make sure: a proof score must never come from a drawing move)
+        int player = board.getTurnPlayer();
+        long own = board.getPieces(player);
+        long other = board.getPieces(1 - player);
+        int winning_move = TacticalRolloutPolicy.findWinningMove(own, other, true);
+        if (winning_move != NO_MOVE) {
+            board.doMove(winning_move);
+            boolean wins = board.getWinner() == player;
+            board.undoMove();
+            if (wins) {
+                return WIN_SCORE - ply - 1;
+            }
+        }
+        if (depth == 0) {
+            return (int) (evaluator.score(board, player) * EVAL_SCALE);
+        }
+
+        // Transposition table
+        long key = board.getHash();
+        int table_move = NO_MOVE;
+        long entry = table.probe(key);
+        if (entry != TranspositionTable.NOT_FOUND) {
+            table_move = TranspositionTable.move(entry);
+            if (TranspositionTable.depth(entry) >= depth) {
+                int score = fromTable(TranspositionTable.score(entry), ply);
+                int bound = TranspositionTable.bound(entry);
+                if (bound == TranspositionTable.EXACT || (bound == TranspositionTable.LOWER && score >= beta)
+                        || (bound == TranspositionTable.UPPER && score <= alpha)) {
+                    return score;
+                }
+            }
+        }
+
+        int n = board.generateDistinctMoves(moves[ply]);
+        scoreMoves(ply, n, table_move);
+        int original_alpha = alpha;
+        int best = -INFINITY;
+        int best_move = NO_MOVE;
+        for (int i = 0; i < n; i++) {
+            int move = pickNextMove(ply, i, n);
+            board.doMove(move);
+            int score;
+            if (i == 0) {
+                score = -negamax(depth - 1, ply + 1, -beta, -alpha);
+            } else {
+                // Principal variation search: prove the move is not better with a null window first
+                score = -negamax(depth - 1, ply + 1, -alpha - 1, -alpha);
+                if (score > alpha && score < beta && !aborted) {
+                    score = -negamax(depth - 1, ply + 1, -beta, -alpha);
+                }
+            }
+            board.undoMove();
+            if (aborted) {
+                return 0;
+            }
+            if (score > best) {
+                best = score;
+                best_move = move;
+            }
+            if (score > alpha) {
+                alpha = score;
+            }
+            if (alpha >= beta) {
+                // Cutoff: remember the move for ordering elsewhere
+                if (killers[ply][0] != move) {
+                    killers[ply][1] = killers[ply][0];
+                    killers[ply][0] = move;
+                }
+                history[player][move] += depth * depth;
+                break;
+            }
+        }
+
+        int bound = (best <= original_alpha) ? TranspositionTable.UPPER
+                : (best >= beta) ? TranspositionTable.LOWER : TranspositionTable.EXACT;
+        table.store(key, toTable(best, ply), best_move, depth, bound);
+        return best;
+    }
+    //-------------------------------------------
+
+    /**
+     * Move ordering.
+     */
+    //-------------------------------------------
+    // Ordering score of every move at a ply: the given first move, then killers, then history
+    private void scoreMoves(int ply, int n, int first_move) {
+        int player = board.getTurnPlayer();
+        for (int i = 0; i < n; i++) {
+            int move = moves[ply][i];
+            int score;
+            if (move == first_move) {
+                score = Integer.MAX_VALUE;
+            } else if (move == killers[ply][0]) {
+                score = Integer.MAX_VALUE - 1;
+            } else if (move == killers[ply][1]) {
+                score = Integer.MAX_VALUE - 2;
+            } else {
+                score = Math.min(history[player][move], Integer.MAX_VALUE - 3);
+            }
+            move_scores[ply][i] = score;
+        }
+    }
+
+    // Selection sort step: bring the best remaining move to position i (most nodes cut off after a few moves)
+    private int pickNextMove(int ply, int i, int n) {
+        int[] m = moves[ply];
+        int[] s = move_scores[ply];
+        int best = i;
+        for (int j = i + 1; j < n; j++) {
+            if (s[j] > s[best]) {
+                best = j;
+            }
+        }
+        int move = m[best];
+        m[best] = m[i];
+        m[i] = move;
+        int score = s[best];
+        s[best] = s[i];
+        s[i] = score;
+        return move;
+    }
+    //-------------------------------------------
+
+    /**
+     * Win scores are stored in the transposition table relative to the position, so they stay right wherever the
+     * position is reached from.
+     */
+    //-------------------------------------------
+    private static int toTable(int score, int ply) {
+        return score >= WIN_BOUND ? score + ply : score <= -WIN_BOUND ? score - ply : score;
+    }
+
+    private static int fromTable(int score, int ply) {
+        return score >= WIN_BOUND ? score - ply : score <= -WIN_BOUND ? score + ply : score;
+    }
+    //-------------------------------------------
+
+    /**
+     * Getters and setters for this class.
+     */
+
+    public long getStartTime() {
+        return start_time;
+    }
+
+    public void setStartTime(long start_time) {
+        this.start_time = start_time;
+    }
+
+    public int getTimeAllowed() {
+        return time_allowed;
+    }
+
+    public void setTimeAllowed(int time_allowed) {
+        this.time_allowed = time_allowed;
+    }
+
+    public long getNodes() {
+        return nodes;
+    }
+}
@@ -0,0 +1,107 @@
+package student_player;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing (linear probing) hash set of primitive longs.
+ * Used to deduplicate positions by their Zobrist key without boxing or string building.
+ * A set can be cleared and reused, so the table is only allocated once.
+ */
+public class LongHashSet {
+
+    // 0 marks an empty slot, so the key 0 itself is tracked with a flag
+    private long[] keys;
+    private int mask;
+    private int size;
+    private boolean containsZero;
+
+    /**
+     * Constructor, sized so that the expected number of keys keeps the table at most half full.
+     *
+     * @param expected
+     */
+    public LongHashSet(int expected) {
+        int capacity = 16;
+        while (capacity < expected * 2) {
+            capacity <<= 1;
+        }
+        this.keys = new long[capacity];
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * Add a key to the set.
+     *
+     * @param key
+     * @return true if the key was not in the set yet
+     */
+    public boolean add(long key) {
+        if (key == 0) {
+            boolean added = !containsZero;
+            containsZero = true;
+            if (added) {
+                size++;
+            }
+            return added;
+        }
+        int slot = slotOf(key);
+        while (keys[slot] != 0) {
+            if (keys[slot] == key) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        size++;
+        if (size * 2 > keys.length) {
+            grow();
+        }
+        return true;
+    }
+
+    public boolean contains(long key) {
+        if (key == 0) {
+            return containsZero;
+        }
+        int slot = slotOf(key);
+        while (keys[slot] != 0) {
+            if (keys[slot] == key) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    public void clear() {
+        if (size > 0) {
+            Arrays.fill(keys, 0L);
+            size = 0;
+            containsZero = false;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private int slotOf(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private void grow() {
+        long[] old = keys;
+        keys = new long[old.length * 2];
+        mask = keys.length - 1;
+        for (long k : old) {
+            if (k != 0) {
+                int slot = slotOf(k);
+                while (keys[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = k;
+            }
+        }
+    }
+}
@@ -21,17 +21,19 @@ public class LoseNextHeuristic {
         // Fetch all legal moves for the current board state
         ArrayList<PentagoMove> moves = pbs.getAllLegalMoves();
         // Trim the moves which produce the same outcome
-        moves = MCTSState.trimLegalMoves(pbs, moves);
+        moves = MyTools.trimLegalMoves(pbs, moves);
         // Opponent
         int opponent = MyTools.getOpponent(pbs);
         ArrayList<PentagoMove> losing_moves = new ArrayList<>();
         // For each potential moves, identify if there is one which would make our opponent win
         // if so, we should play that move to block our opponent from winning.
         for (PentagoMove pm : moves) {
-            PentagoBoardState pbs_clone = (PentagoBoardState) pbs.clone();
-            pbs_clone.processMove(pm);
+            // Play the move in place, then take it back
+            pbs.doMove(pm.encode());
+            int winner = pbs.getWinner();
+            pbs.undoMove();
             // Check if our opponent could win
-            if (pbs_clone.getWinner() == opponent) {
+            if (winner == opponent) {
                 losing_moves.add(pm);
             }
         }
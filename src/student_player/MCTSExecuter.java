@@ -1,14 +1,15 @@
 package student_player;
 
-import boardgame.Board;
 import boardgame.Move;
 import pentago_twist.PentagoBoardState;
 import pentago_twist.PentagoMove;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Reference used during the construction of the MCTS classes:
@@ -19,24 +20,81 @@ import java.util.Map;
 
 public class MCTSExecuter {
 
-    // Constants
-    private static int INCR_SCORE = 50;
-    private static final double SCALING_CONSTANT = Math.sqrt(2); // UCT scaling constant
-    private int OPPONENT;
+    /**
+     * How the worker threads share the search.
+     * ROOT: each worker builds its own tree from the same root, the root children are merged at the end.
+     * TREE: all workers search one shared tree, using virtual losses to spread out.
+     */
+    public enum ParallelMode {
+        ROOT, TREE
+    }
+
+    /**
+     * How the root children statistics of independent worker trees are combined into a single decision.
+     * SUM_VISITS: add up the visits of each move over all trees and play the most visited one.
+     * MAJORITY_VOTE: each tree votes for its most visited move, ties broken by summed visits.
+     */
+    public enum MergeRule {
+        SUM_VISITS, MAJORITY_VOTE
+    }
+
+    // Encoded moves are 9 bits (see PentagoBitboard.encodeMove)
+    private static final int MOVE_KEYS = 1 << 9;
+
     private int AGENT;
     private long start_time;
     private int time_allowed;
 
+    // Workers, and the trees they search (one per worker in ROOT mode, a single shared one in TREE mode)
+    private MCTSWorker[] workers;
+    private MCTSTree[] trees;
+    private MergeRule merge_rule;
+    private long[] merged_visits = new long[MOVE_KEYS];
+    private int[] votes = new int[MOVE_KEYS];
+    private byte[] proofs = new byte[MOVE_KEYS];
+
     // Serialization (not used in final implementation)
     private static String TREE_FILE_NAME = "./data/tree.ser";
     public Map<Integer, ArrayList<SerializableNode>> tree;
 
     /**
-     * Constructor for our MCTS agent
+     * Constructor for our MCTS agent, using the thread count, parallel mode and merge rule set in MyTools.
      */
     public MCTSExecuter() {
+        this(MyTools.SEARCH_THREADS, MyTools.PARALLEL_MODE, MyTools.MERGE_RULE);
+    }
+
+    /**
+     * Constructor for our MCTS agent.
+     *
+     * @param threads    number of workers searching in parallel (1 searches on the calling thread only)
+     * @param mode       independent trees per worker, or one shared tree
+     * @param merge_rule how root statistics of independent trees are combined (ROOT mode)
+     */
+    public MCTSExecuter(int threads, ParallelMode mode, MergeRule merge_rule) {
         super();
-        MyTools.print("Initializing MCTSExecuter agent.");
+        threads = Math.max(1, threads);
+        MyTools.print("Initializing MCTSExecuter agent with " + threads + " thread(s), " + mode + " parallel.");
+        this.merge_rule = merge_rule;
+        workers = new MCTSWorker[threads];
+        long seed = System.nanoTime();
+        boolean amaf = MyTools.RAVE_SCHEDULE != MCTSWorker.RaveSchedule.NONE;
+        if (mode == ParallelMode.TREE) {
+            trees = new MCTSTree[]{new MCTSTree(MCTSTree.nodesForHeapFraction(MyTools.TREE_HEAP_FRACTION, amaf), MyTools.BACKUP_RULE, amaf)};
+            // No virtual loss is needed when a single worker searches the tree
+            int virtual_loss = threads > 1 ? MyTools.VIRTUAL_LOSS : 0;
+            for (int i = 0; i < threads; i++) {
+                workers[i] = new MCTSWorker(trees[0], seed + i, virtual_loss, MyTools.LEAF_ROLLOUTS);
+            }
+        } else {
+            // The heap share for the search is split evenly between the worker trees
+            int max_nodes = MCTSTree.nodesForHeapFraction(MyTools.TREE_HEAP_FRACTION / threads, amaf);
+            trees = new MCTSTree[threads];
+            for (int i = 0; i < threads; i++) {
+                trees[i] = new MCTSTree(max_nodes, MyTools.BACKUP_RULE, amaf);
+                workers[i] = new MCTSWorker(trees[i], seed + i, 0, MyTools.LEAF_ROLLOUTS);
+            }
+        }
     }
 
     /**
@@ -56,205 +114,106 @@ public class MCTSExecuter {
 
         // Define end time to respect time allocated
         long endtime = start_time + time_allowed;
-
-        // Init root node of our MCTS, with no children
-        MCTSNode root = new MCTSNode(pbs, null);
-        OPPONENT = MyTools.getOpponent(pbs);
         AGENT = MyTools.getAgentTurnNum(pbs);
-        root.getNodeState().setPlayerno(OPPONENT);
-
-        while (System.currentTimeMillis() < endtime) { // given time allowed at each move
-
-            int playout_result;
-
-            // SELECTION
-            MCTSNode selected = select(root);
-
-            // EXPANSION
-            int expanded_winner = selected.getNodeState().getPbs().getWinner();
-            if (expanded_winner == Board.NOBODY) {
-                // If this is not a leaf node (ie: if there is no winner yet for this game), expand search tree.
-                // This will expand the tree states from the promising node
-                expand(selected);
-            }
-
-            // ROLLOUT
-            MCTSNode simulate_node = selected;
-            ArrayList<MCTSNode> promising_children = selected.getNodeChildren();
-            if (promising_children.size() > 0) { // maybe have children by expansion at previous step
-                // simplest heuristic, get a random child of the promising expanded node to rollout
-                simulate_node = selected.selectUsingDefaultPolicy();
-            }
-            playout_result = rollout(simulate_node); // play a simulation
-
-            // BACKPROPAGATION
-            backpropagate(simulate_node, playout_result);
 
+        // Every tree is searched from this root (reusing its subtree from last turn if it can)
+        for (MCTSTree t : trees) {
+            t.setRootPosition(pbs.getBitboard());
         }
-
-        /* Exploring the use of serialization to persist tree knowledge across moves/games (not used).
-        // Save/update tree
-        ArrayList<MCTSNode> children_of_root = root.getNodeChildren();
-        ArrayList<SerializableNode> sernodes = new ArrayList<>();
-        MCTSState temp;
-        for(MCTSNode c : children_of_root) {
-            temp = c.getNodeState();
-            sernodes.add(new SerializableNode(temp.getVisits(), temp.getScore(), temp.getPbs().hashCode(), temp.getPlayerno()));
+        // Raised by the first worker that solves its root, to stop everybody
+        AtomicBoolean solved = new AtomicBoolean();
+        for (MCTSWorker w : workers) {
+            w.prepare(endtime, solved);
         }
-        tree.put(pbsclonedhash, sernodes);
-
-         Serialize tree
-        MCTSExecuter.serialize(tree, TREE_FILE_NAME);
-         */
 
-
-        // Finally, determine node with the highest score (visits).
-        // This node will be used as our next move.
-        MCTSNode chosen = root.pickChildWithMostVisits();
-        PentagoMove next_move = chosen.getNodeState().getPm();
-
-        return next_move;
-
-    }
-
-    /**
-     * MCTS methods for performing algorithm.
-     * 1. Selection
-     * 2. Expansion
-     * 3. Simulation
-     * 4. Backpropagation
-     */
-
-    /**
-     * Determine the most promising child (tree leaf) from a given start node to explore based on UCT computations.
-     *
-     * @param start_node
-     * @return
-     */
-    public MCTSNode select(MCTSNode start_node) {
-        MCTSNode n = start_node;
-        // Get all the way down to a leaf node in our mcts tree
-        while (n.getNodeChildren().size() != 0) { // as long as we have children to select from to expand
-            n = selectUsingTreePolicy(n); // will recurse on the most promising node at each iteration!
-        }
-        // return leaf node from our mcts tree which has the best UCT value
-        return n;
-    }
-
-    /**
-     * Monte Carlo Upper Confidence Tree Computations.
-     */
-    //-------------------------------------------
-    // Compute UCT
-    public double compute_uct(int visit_at_node, double node_score, int total_visits) {
-        if (visit_at_node == 0) {
-            return Integer.MAX_VALUE;
+        // Worker 0 runs on this thread, the others on their own
+        Thread[] threads = new Thread[workers.length - 1];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(workers[i + 1], "mcts-worker-" + (i + 1));
+            threads[i].setDaemon(true);
+            threads[i].start();
         }
-        double exploitation = (node_score) / (double) visit_at_node;
-        double exploration = SCALING_CONSTANT * Math.sqrt(Math.log(total_visits) / (double) visit_at_node);
-        double uct_value = exploitation + exploration;
-        return uct_value;
-    }
-
-    // Select best child node to expand
-    public MCTSNode selectUsingTreePolicy(MCTSNode n) {
-        // Parent
-        int visits_parents = n.getNodeState().getVisits();
-        // For comparison
-        double best = Integer.MIN_VALUE;
-        double curr;
-        MCTSNode node = null;
-        // Simply get all the children for given node, compute UCT for each, and select best one.
-        ArrayList<MCTSNode> children = n.getNodeChildren();
-        for (MCTSNode c : children) {
-            curr = compute_uct(c.getNodeState().getVisits(), c.getNodeState().getScore(), visits_parents);
-            if (curr > best) { // if better than current best, save node
-                best = curr;
-                node = c;
+        workers[0].run();
+        for (Thread t : threads) {
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
         }
-        return node;
-    }
-    //-------------------------------------------
 
-    /**
-     * Expand a promising node which is not a leaf (no winner yet).
-     *
-     * @param node
-     */
-    //-------------------------------------------
-    public void expand(MCTSNode node) {
-        // Produce list of expanded states from the given node (performing all moves, adding to search tree the resulting states)
-        ArrayList<MCTSState> expanded_states = node.getNodeState().getExpandedNodeStates();
-        for (MCTSState s : expanded_states) {
-            // For each expanded node states, add them to the monte carlo search tree
-            MCTSNode n = new MCTSNode(s);
-            n.setNodeParent(node);
-            // Set player no to opponent for child
-            n.getNodeState().setPlayerno(MyTools.getOpponent(node.getNodeState().getPbs()));
-            // Add this newly created expanded state to list of children of parent node
-            ArrayList<MCTSNode> children = node.getNodeChildren();
-            children.add(n);
-            node.setNodeChildren(children);
+        // Finally, determine the move with the highest score (visits), over all worker trees.
+        int chosen = pickMergedMove();
+        if (chosen == MCTSTree.NONE) { // no iteration completed, play anything legal
+            return pbs.getRandomMove();
         }
-        // Now, our node has the expanded nodes as its children
+        return PentagoMove.decode(chosen, AGENT);
+
     }
-    //-------------------------------------------
 
     /**
-     * Run a simulation to determine outcome of a rollout.
+     * Merge the root children of the trees by move and pick the move to play.
+     * All workers generate the same distinct moves for the same position, so children match on their encoded move.
+     * A move proven to win in any tree is played at once, moves proven to lose are only played if nothing else is left.
      *
-     * @param node
-     * @return
+     * @return encoded move, or MCTSTree.NONE if no tree has any root child
      */
-    //-------------------------------------------
-    public int rollout(MCTSNode node) {
-        // Temp node and state
-        MCTSNode temp_node = new MCTSNode(node);
-        MCTSState temp_state = temp_node.getNodeState();
-
-        // Determine a winner from a rollout of random moves
-        int winner = temp_state.getPbs().getWinner();
-        while (winner == Board.NOBODY) {
-            temp_state.switchPlayer();
-            // play random moves
-            temp_state.randomMove();
-            // update winner
-            winner = temp_state.getPbs().getWinner();
+    public int pickMergedMove() {
+        Arrays.fill(merged_visits, 0L);
+        Arrays.fill(votes, 0);
+        Arrays.fill(proofs, MCTSTree.UNKNOWN);
+        long playouts = 0;
+        for (MCTSTree t : trees) {
+            int root = t.getRoot();
+            playouts += t.getVisits(root);
+            for (int c = t.getFirstChild(root); c != MCTSTree.NONE; c = t.getNextSibling(c)) {
+                merged_visits[t.getMove(c)] += t.getSelectionVisits(c);
+                byte proof = t.getProof(t.getCanonical(c));
+                if (proof == MCTSTree.PROVEN_WIN) {
+                    MyTools.print("MCTS: proven win.");
+                    return t.getMove(c);
+                } else if (proof != MCTSTree.UNKNOWN) {
+                    proofs[t.getMove(c)] = proof;
+                }
+            }
+            int best = t.pickChildWithMostVisits(root);
+            if (best != MCTSTree.NONE) {
+                votes[t.getMove(best)]++;
+            }
         }
-
-        // Determine winner and set scores to respective node states.
-        // Set Integer.MAX_VALUE to node state if our agent won, Integer.MIN_VALUE
-        if (winner == OPPONENT) {
-            temp_node.getNodeParent().getNodeState().setScore(Integer.MIN_VALUE);
-        } else {
-            temp_node.getNodeParent().getNodeState().setScore(Integer.MAX_VALUE);
+        double playouts_per_second = 0;
+        for (MCTSWorker w : workers) {
+            playouts_per_second += w.getRolloutEngine().getPlayoutsPerSecond();
         }
-
-        return winner;
-    }
-    //-------------------------------------------
-
-    /**
-     * Perform backprogation, updating visits and score values of nodes involved in a certain playout.
-     *
-     * @param node
-     * @param winner
-     */
-    //-------------------------------------------
-    public void backpropagate(MCTSNode node, int winner) { // playerNo represents the winner from the playout
-        MCTSNode temp = node; // use temp as a pointer for current visiting node
-        while (temp != null) { // all the way back up to root of our MCTS
-            temp.getNodeState().updateVisits(); // update visit scores for nodes used in playout
-            if (temp.getNodeState().getPlayerno() == winner) {
-                // increment score for winning player at each node along path
-                temp.getNodeState().updateScore(INCR_SCORE);
+        MyTools.print("MCTS: " + playouts + " playouts by " + workers.length + " worker(s) over " + trees.length
+                + " tree(s), " + trees[0].size() + " nodes in the first.");
+        MyTools.print(String.format("Rollouts: %.0f playouts/s (time spent in playouts only).", playouts_per_second));
+
+        int chosen = MCTSTree.NONE;
+        for (int m = 0; m < MOVE_KEYS; m++) {
+            if (merged_visits[m] == 0 && votes[m] == 0) {
+                continue;
+            }
+            if (chosen == MCTSTree.NONE) {
+                chosen = m;
+                continue;
+            }
+            boolean lost = proofs[m] == MCTSTree.PROVEN_LOSS;
+            boolean chosen_lost = proofs[chosen] == MCTSTree.PROVEN_LOSS;
+            boolean better;
+            if (lost != chosen_lost) {
+                better = chosen_lost;
+            } else if (merge_rule == MergeRule.MAJORITY_VOTE) {
+                better = votes[m] > votes[chosen] || (votes[m] == votes[chosen] && merged_visits[m] > merged_visits[chosen]);
+            } else {
+                better = merged_visits[m] > merged_visits[chosen];
+            }
+            if (better) {
+                chosen = m;
             }
-            // move up one node in our search tree
-            temp = temp.getNodeParent();
         }
+        return chosen;
     }
-    //-------------------------------------------
 
     /**
      * Getters and setters for this class.
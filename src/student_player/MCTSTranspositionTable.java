@@ -0,0 +1,71 @@
+package student_player;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class MCTSTranspositionTable {
+
+    /**
+     * This MCTSTranspositionTable.java class maps positions (Zobrist keys, see PentagoBitboard.getHash) to the
+     * MCTSTree node holding their statistics, so that a position reached by several move orders is searched
+     * from a single node.
+     *
+     * It is an open-addressing table in one AtomicLongArray. Each entry packs the high bits of the key with
+     * the node id + 1 (0 marks an empty slot), so an entry is inserted with a single CAS and can be read by other
+     * threads without locking. Keys are checked on their high bits only; the slot index adds the low bits, which
+     * leaves a false match very unlikely.
+     */
+
+    private static final int NODE_BITS = 27; // node id + 1, node ids are below 2^26
+    private static final long NODE_MASK = (1L << NODE_BITS) - 1;
+    private static final int MAX_PROBES = 32;
+
+    private final AtomicLongArray entries;
+    private final int mask;
+
+    /**
+     * Constructor.
+     *
+     * @param min_capacity rounded up to a power of two
+     */
+    public MCTSTranspositionTable(int min_capacity) {
+        int capacity = Integer.highestOneBit(Math.max(1024, min_capacity - 1)) << 1;
+        entries = new AtomicLongArray(capacity);
+        mask = capacity - 1;
+    }
+
+    /**
+     * Find the node of a position, registering the given one if the position is not in the table yet.
+     *
+     * @param hash position key
+     * @param node node to register
+     * @return the node already registered for the position, the given node if it was just registered,
+     * or MCTSTree.NONE if the table is too full around this key to register it
+     */
+    public int findOrAdd(long hash, int node) {
+        long key = hash & ~NODE_MASK;
+        long entry = key | (node + 1);
+        int i = (int) hash & mask;
+        for (int probe = 0; probe < MAX_PROBES; probe++, i = (i + 1) & mask) {
+            long current = entries.get(i);
+            if (current == 0) {
+                if (entries.compareAndSet(i, 0L, entry)) {
+                    return node;
+                }
+                current = entries.get(i); // someone else took the slot, it may be the same position
+            }
+            if ((current & ~NODE_MASK) == key) {
+                return (int) (current & NODE_MASK) - 1;
+            }
+        }
+        return MCTSTree.NONE;
+    }
+
+    /**
+     * Empty the table. Must only be called while nobody is searching.
+     */
+    public void clear() {
+        for (int i = 0; i <= mask; i++) {
+            entries.set(i, 0L);
+        }
+    }
+}
@@ -0,0 +1,822 @@
+package student_player;
+
+import pentago_twist.PentagoBitboard;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class MCTSTree {
+
+    /**
+     * This MCTSTree.java class stores the whole Monte Carlo search tree in parallel primitive arrays
+     * (struct-of-arrays) instead of one MCTSNode object per node. A node is just an int id. For each node we keep
+     * the parent id, the first child id, the next sibling id, the encoded move leading to it (see
+     * PentagoBitboard.encodeMove) and its statistics.
+     *
+     * Nodes do not hold a board: the search replays the moves from the root position (kept here) along the
+     * selection path. Arrays are allocated in chunks as the tree grows, so nothing is copied when the tree gets
+     * bigger and a node costs BYTES_PER_NODE (33) bytes, plus AMAF_BYTES_PER_NODE (8) with RAVE statistics.
+     *
+     * Scores are from the point of view of the player who played the move leading to the node.
+     *
+     * The tree can be searched by several threads at once without locks:
+     * - visits and score of a node are packed in one long and updated with a single atomic add,
+     * - a node is expanded by whoever wins the CAS on its first child link (NONE -> EXPANDING), and its children
+     * are published by the volatile write of that link once they are initialized,
+     * - node ids are reserved with a CAS on the size, chunks are allocated under a lock.
+     * clear(), reroot() and setRootPosition() must only be called while nobody is searching.
+     *
+     * Children are always allocated after their parent, so a node id is greater than its parent's. reroot() relies
+     * on this to keep a subtree in place for the next turn.
+     *
+     * With transpositions (any backup rule but TREE), the tree is really a DAG: when a node is about to be expanded
+     * and its position already has a node (found in a MCTSTranspositionTable), it becomes an alias of that canonical
+     * node instead. An alias has no children of its own, the search goes on through the canonical node's children.
+     *
+     * MCTS-Solver: a node can also hold a proven game value, from the point of view of the player who moved into it.
+     * Terminal positions are proven as they are reached and updateProof() carries proofs up. A proof only ever goes
+     * from UNKNOWN to a value, so a thread reading a stale UNKNOWN just searches a little more.
+     *
+     * Progressive widening: a node need not get all its children at once. Its width word holds how many children
+     * it has, whether that is all of them (COMPLETE) and whether a thread is adding more (BUSY). More children are
+     * linked in front of the existing ones by whoever claims BUSY, and published by the write of the first child link.
+     *
+     * RAVE: optionally, each node also has all-moves-as-first statistics (packed like the others), counting the
+     * playouts through its parent in which its move was played at any later point by the same player.
+     */
+
+    /**
+     * How statistics are backed up and read when positions are shared (see MCTSTranspositionTable).
+     * TREE: no transpositions, every node has its own statistics.
+     * SHARED: an alias node reads and updates the statistics of its canonical node only.
+     * UCT2: an alias node keeps its own (edge) statistics, which give its visit count, and also updates its
+     * canonical node, whose mean score is used as the value of the position.
+     */
+    public enum BackupRule {
+        TREE, SHARED, UCT2
+    }
+
+    // Proven values (MCTS-Solver)
+    public static final byte UNKNOWN = 0;
+    public static final byte PROVEN_WIN = 1;
+    public static final byte PROVEN_LOSS = 2;
+    public static final byte PROVEN_DRAW = 3;
+
+    public static final int NONE = -1;
+    private static final int EXPANDING = -2; // first child link while a thread is creating the children
+    private static final int ALIAS = -3; // first child link of an alias node
+
+    // Width word of a node: number of children, and flags
+    private static final int COMPLETE = 1 << 30; // every move has a child
+    private static final int BUSY = 1 << 29; // a thread is adding children
+    private static final int WIDTH_MASK = BUSY - 1;
+
+    // Chunked storage: node id -> (chunk, offset)
+    private static final int CHUNK_BITS = 14;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int MAX_CHUNKS = 1 << 12; // 64M nodes at most
+    public static final int BYTES_PER_NODE = 33;
+    public static final int AMAF_BYTES_PER_NODE = 8;
+
+    // Packed statistics: visits in the high 28 bits, score in fixed point (1/SCORE_SCALE) in the low 36 bits
+    private static final int VISIT_SHIFT = 36;
+    private static final long VISIT_ONE = 1L << VISIT_SHIFT;
+    private static final long SCORE_MASK = VISIT_ONE - 1;
+    private static final double SCORE_SCALE = 256;
+
+    // Written once before a node is published, read-only afterwards
+    private final int[][] parent = new int[MAX_CHUNKS][];
+    private final int[][] next_sibling = new int[MAX_CHUNKS][];
+    private final int[][] move = new int[MAX_CHUNKS][];
+    private final int[][] alias = new int[MAX_CHUNKS][];
+    // Proven values, plain bytes: racing writers always write the same value for a position
+    private final byte[][] proof = new byte[MAX_CHUNKS][];
+    // Shared mutable state
+    private final AtomicIntegerArray[] first_child = new AtomicIntegerArray[MAX_CHUNKS];
+    private final AtomicIntegerArray[] width = new AtomicIntegerArray[MAX_CHUNKS];
+    private final AtomicLongArray[] stats = new AtomicLongArray[MAX_CHUNKS];
+    private final AtomicLongArray[] amaf = new AtomicLongArray[MAX_CHUNKS]; // only allocated with RAVE
+    private boolean amaf_enabled;
+
+    private final AtomicInteger size = new AtomicInteger();
+    private volatile int allocated_chunks;
+    private int max_nodes;
+
+    // Transpositions (null with the TREE backup rule)
+    private BackupRule backup_rule;
+    private MCTSTranspositionTable transpositions;
+
+    // Position of the root node, and a scratch board to find last turn's subtree
+    private PentagoBitboard root_board;
+    private PentagoBitboard board = new PentagoBitboard();
+
+    // Scratch for reroot(): subtree membership bitset and per-word prefix counts (kept between calls)
+    private long[] kept = new long[0];
+    private int[] kept_before = new int[0];
+
+    /**
+     * Constructor for a plain tree. The tree starts with a single root node.
+     *
+     * @param max_nodes node budget; expansion stops once it is reached
+     */
+    public MCTSTree(int max_nodes) {
+        this(max_nodes, BackupRule.TREE);
+    }
+
+    /**
+     * Constructor. The tree starts with a single root node.
+     *
+     * @param max_nodes   node budget; expansion stops once it is reached
+     * @param backup_rule TREE, or how transposed positions share statistics
+     */
+    public MCTSTree(int max_nodes, BackupRule backup_rule) {
+        this(max_nodes, backup_rule, false);
+    }
+
+    /**
+     * Constructor. The tree starts with a single root node.
+     *
+     * @param max_nodes   node budget; expansion stops once it is reached
+     * @param backup_rule TREE, or how transposed positions share statistics
+     * @param amaf        keep all-moves-as-first statistics (RAVE)
+     */
+    public MCTSTree(int max_nodes, BackupRule backup_rule, boolean amaf) {
+        this.max_nodes = Math.min(max_nodes, MAX_CHUNKS * CHUNK_SIZE);
+        this.backup_rule = backup_rule;
+        this.amaf_enabled = amaf;
+        if (backup_rule != BackupRule.TREE) {
+            // Only expanded nodes are registered, there are far fewer of them than nodes
+            transpositions = new MCTSTranspositionTable(this.max_nodes / 8);
+        }
+        clear();
+    }
+
+    /**
+     * Node budget that uses at most the given fraction of the maximum heap.
+     *
+     * @param heap_fraction
+     * @return
+     */
+    public static int nodesForHeapFraction(double heap_fraction) {
+        return nodesForHeapFraction(heap_fraction, false);
+    }
+
+    /**
+     * Node budget that uses at most the given fraction of the maximum heap.
+     *
+     * @param heap_fraction
+     * @param amaf          nodes keep all-moves-as-first statistics
+     * @return
+     */
+    public static int nodesForHeapFraction(double heap_fraction, boolean amaf) {
+        long bytes = (long) (Runtime.getRuntime().maxMemory() * heap_fraction);
+        return (int) Math.min(Integer.MAX_VALUE, bytes / (BYTES_PER_NODE + (amaf ? AMAF_BYTES_PER_NODE : 0)));
+    }
+
+    /**
+     * Drop every node but a fresh root. Allocated chunks are kept for reuse.
+     */
+    public void clear() {
+        if (transpositions != null) {
+            transpositions.clear();
+        }
+        size.set(0);
+        int root = allocate(1);
+        initNode(root, NONE, NONE);
+    }
+
+    /**
+     * Set the position to search from. The subtree reached by our last move and the opponent's reply
+     * is reused if we have it, otherwise the tree starts again from a single root node.
+     *
+     * @param position position to search, copied
+     */
+    public void setRootPosition(PentagoBitboard position) {
+        boolean advanced = advanceRoot(position);
+        if (!advanced) {
+            clear();
+        }
+        root_board = new PentagoBitboard(position);
+        if (advanced && transpositions != null) {
+            rebuildTranspositions(); // node ids have changed
+        }
+    }
+
+    public PentagoBitboard getRootPosition() {
+        return root_board;
+    }
+
+    /**
+     * Tree reuse across turns: look for the grandchild of the current root (our move, then the opponent's reply)
+     * whose position is the given one, and promote it to root so its statistics are kept.
+     *
+     * @param target current position
+     * @return false if there is no previous tree or the position is not in it
+     */
+    public boolean advanceRoot(PentagoBitboard target) {
+        if (root_board == null) {
+            return false;
+        }
+        if (root_board.equals(target)) {
+            return true; // same position as last search
+        }
+        if (target.getTurnNumber() * 2 + target.getTurnPlayer() != root_board.getTurnNumber() * 2 + root_board.getTurnPlayer() + 2) {
+            return false; // not two plies later
+        }
+        long target_hash = target.getHash();
+        for (int c = getFirstChild(getRoot()); c != NONE; c = getNextSibling(c)) {
+            board.copyFrom(root_board);
+            board.doMove(getMove(c));
+            for (int g = getFirstChild(c); g != NONE; g = getNextSibling(g)) {
+                // Compare position hashes first, then make sure it is really the same board
+                if (board.hashAfter(getMove(g)) != target_hash) {
+                    continue;
+                }
+                board.doMove(getMove(g));
+                boolean same = board.equals(target);
+                board.undoMove();
+                if (same) {
+                    // An alias has no subtree: keep its canonical node, which is the same position
+                    int kept_root = getCanonical(g);
+                    MyTools.print("Reusing subtree with " + getVisits(kept_root) + " playouts.");
+                    reroot(kept_root);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Make the given node the new root, keeping its whole subtree with its statistics and dropping everything else.
+     * Nodes are compacted in place: their relative order is preserved, so every node moves to a lower (or equal) id
+     * and a single forward pass is enough. Aliases of dropped nodes become plain leaves again, and the transposition
+     * table must be rebuilt afterwards (see rebuildTranspositions()).
+     *
+     * @param new_root
+     */
+    public void reroot(int new_root) {
+        if (new_root == getRoot()) {
+            return;
+        }
+        int n_nodes = size.get();
+        int words = (n_nodes + 63) >>> 6;
+        if (kept.length < words) {
+            kept = new long[words];
+            kept_before = new int[words];
+        }
+        Arrays.fill(kept, 0, words, 0L);
+        // Mark the subtree: a node belongs to it if it is the new root or its parent does (parent id < node id)
+        kept[new_root >>> 6] |= 1L << new_root;
+        for (int n = new_root + 1; n < n_nodes; n++) {
+            int p = getParent(n);
+            if (p >= new_root && (kept[p >>> 6] & (1L << p)) != 0) {
+                kept[n >>> 6] |= 1L << n;
+            }
+        }
+        int count = 0;
+        for (int w = 0; w < words; w++) {
+            kept_before[w] = count;
+            count += Long.bitCount(kept[w]);
+        }
+        // Move every kept node to its rank among kept nodes, remapping its links
+        for (int n = new_root; n < n_nodes; n++) {
+            if ((kept[n >>> 6] & (1L << n)) == 0) {
+                continue;
+            }
+            int chunk = n >>> CHUNK_BITS;
+            int offset = n & CHUNK_MASK;
+            int p = (n == new_root) ? NONE : keptIndex(parent[chunk][offset]);
+            int fc = first_child[chunk].get(offset);
+            int a = NONE;
+            if (fc == ALIAS) {
+                int target = alias[chunk][offset];
+                if ((kept[target >>> 6] & (1L << target)) != 0) {
+                    a = keptIndex(target);
+                } else {
+                    fc = NONE;
+                }
+            } else {
+                fc = keptIndex(fc);
+            }
+            int ns = (n == new_root) ? NONE : keptIndex(next_sibling[chunk][offset]);
+            int m = move[chunk][offset];
+            long st = stats[chunk].get(offset);
+            byte pr = proof[chunk][offset];
+            int wd = width[chunk].get(offset) & ~BUSY; // a widening left unfinished because the tree was full can start again
+            long am = amaf_enabled ? amaf[chunk].get(offset) : 0L;
+            int k = keptIndex(n);
+            chunk = k >>> CHUNK_BITS;
+            offset = k & CHUNK_MASK;
+            parent[chunk][offset] = p;
+            first_child[chunk].set(offset, fc);
+            next_sibling[chunk][offset] = ns;
+            move[chunk][offset] = m;
+            alias[chunk][offset] = a;
+            proof[chunk][offset] = pr;
+            width[chunk].set(offset, wd);
+            stats[chunk].set(offset, st);
+            if (amaf_enabled) {
+                amaf[chunk].set(offset, am);
+            }
+        }
+        size.set(count);
+    }
+
+    // New id of a kept node during reroot() (NONE stays NONE)
+    private int keptIndex(int n) {
+        if (n < 0) {
+            return NONE;
+        }
+        long below = kept[n >>> 6] & ((1L << n) - 1);
+        return kept_before[n >>> 6] + Long.bitCount(below);
+    }
+
+    /**
+     * Register every expanded node with its position again, after reroot() changed the node ids.
+     * The moves are replayed from the root position depth first.
+     */
+    private void rebuildTranspositions() {
+        transpositions.clear();
+        int max_depth = PentagoBitboard.NUM_SQUARES + 1;
+        int[] stack = new int[max_depth];
+        board.copyFrom(root_board);
+        int depth = 0;
+        stack[0] = getRoot();
+        transpositions.findOrAdd(board.getHash(), getRoot());
+        int next = getFirstChild(getRoot());
+        while (depth >= 0) {
+            if (next != NONE) {
+                // Go down into an expanded child, skip leaves and aliases
+                int n = next;
+                next = getNextSibling(n);
+                if (getFirstChild(n) != NONE) {
+                    board.doMove(getMove(n));
+                    transpositions.findOrAdd(board.getHash(), n);
+                    stack[++depth] = n;
+                    next = getFirstChild(n);
+                }
+            } else {
+                // Children done: back up and carry on with the siblings of this node
+                if (depth > 0) {
+                    board.undoMove();
+                }
+                next = depth > 0 ? getNextSibling(stack[depth]) : NONE;
+                depth--;
+            }
+        }
+    }
+
+    /**
+     * Expand a node: append one child per move, linked as siblings in the order given, for every move.
+     * Only one thread can expand a given node; the others get false and can treat it as a leaf for now.
+     *
+     * @param node
+     * @param moves buffer of encoded moves
+     * @param count number of moves to use from the buffer
+     * @return false if the node is already expanded (or being expanded), or if the node budget does not allow it
+     */
+    public boolean addChildren(int node, int[] moves, int count) {
+        return count > 0 && beginExpansion(node) && finishExpansion(node, moves, count);
+    }
+
+    /**
+     * First half of addChildren(): claim the node for expansion.
+     *
+     * @param node
+     * @return false if the node is already expanded, being expanded, or an alias
+     */
+    public boolean beginExpansion(int node) {
+        return first_child[node >>> CHUNK_BITS].compareAndSet(node & CHUNK_MASK, NONE, EXPANDING);
+    }
+
+    /**
+     * Second half of addChildren(), once beginExpansion() succeeded.
+     *
+     * @param node
+     * @param moves
+     * @param count
+     * @return false if the node budget does not allow it (the node is left a leaf)
+     */
+    public boolean finishExpansion(int node, int[] moves, int count) {
+        return finishExpansion(node, moves, count, true);
+    }
+
+    /**
+     * Second half of addChildren(), once beginExpansion() succeeded, possibly for only some of the moves
+     * (see widening below).
+     *
+     * @param node
+     * @param moves
+     * @param count
+     * @param complete whether these are all the moves of the node
+     * @return false if the node budget does not allow it (the node is left a leaf)
+     */
+    public boolean finishExpansion(int node, int[] moves, int count, boolean complete) {
+        AtomicIntegerArray links = first_child[node >>> CHUNK_BITS];
+        int offset = node & CHUNK_MASK;
+        int first = (count == 0) ? NONE : allocate(count);
+        if (first == NONE) {
+            links.set(offset, NONE); // tree is full, the node stays a leaf
+            return false;
+        }
+        linkChildren(node, first, moves, count, NONE);
+        // The width is set before the children are published, so nobody can start widening from a width of 0
+        width[node >>> CHUNK_BITS].set(offset, count | (complete ? COMPLETE : 0));
+        links.set(offset, first); // publishes the children
+        return true;
+    }
+
+    /**
+     * Progressive widening: claim an expanded node that does not have all its children yet, to add more.
+     *
+     * @param node
+     * @return false if the node has all its children, another thread is adding some, or the tree is full
+     */
+    public boolean beginWidening(int node) {
+        AtomicIntegerArray widths = width[node >>> CHUNK_BITS];
+        int w = widths.get(node & CHUNK_MASK);
+        if ((w & (COMPLETE | BUSY)) != 0 || getFirstChild(node) == NONE || size.get() >= max_nodes) {
+            return false;
+        }
+        return widths.compareAndSet(node & CHUNK_MASK, w, w | BUSY);
+    }
+
+    /**
+     * Second half of widening, once beginWidening() succeeded: add children for the given moves in front of the
+     * existing ones.
+     *
+     * @param node
+     * @param moves    moves that do not have a child yet
+     * @param count
+     * @param complete whether the node then has all its children
+     * @return false if the node budget does not allow it (the node then keeps its width)
+     */
+    public boolean finishWidening(int node, int[] moves, int count, boolean complete) {
+        int offset = node & CHUNK_MASK;
+        int first = (count == 0) ? getFirstChild(node) : allocate(count);
+        if (first == NONE) {
+            return false; // tree is full: stays BUSY, so nobody tries again until the next reroot()
+        }
+        if (count > 0) {
+            linkChildren(node, first, moves, count, getFirstChild(node));
+            first_child[node >>> CHUNK_BITS].set(offset, first); // publishes the children
+        }
+        // Set after the children are published: whoever sees COMPLETE also sees all the children
+        width[node >>> CHUNK_BITS].set(offset, (getWidth(node) + count) | (complete ? COMPLETE : 0));
+        return true;
+    }
+
+    // Initialize count consecutive nodes as children of node, the last one followed by the given sibling
+    private void linkChildren(int node, int first, int[] moves, int count, int last_sibling) {
+        for (int i = 0; i < count; i++) {
+            initNode(first + i, node, moves[i]);
+            next_sibling[(first + i) >>> CHUNK_BITS][(first + i) & CHUNK_MASK] = (i + 1 < count) ? first + i + 1 : last_sibling;
+        }
+    }
+
+    /**
+     * Number of children of a node.
+     *
+     * @param node
+     * @return
+     */
+    public int getWidth(int node) {
+        return width[node >>> CHUNK_BITS].get(node & CHUNK_MASK) & WIDTH_MASK;
+    }
+
+    /**
+     * Whether every move of a node has a child (always true without progressive widening, once expanded).
+     *
+     * @param node
+     * @return
+     */
+    public boolean isComplete(int node) {
+        return (width[node >>> CHUNK_BITS].get(node & CHUNK_MASK) & COMPLETE) != 0;
+    }
+
+    /**
+     * Transpositions: once beginExpansion() succeeded on a node, look its position up. If another node already
+     * stands for it, the node becomes an alias of that one (and is not expanded), otherwise it is registered.
+     *
+     * @param node claimed with beginExpansion()
+     * @param hash key of the node's position
+     * @return the canonical node of the position (node itself if it was registered, or if there are no
+     * transpositions); when it is another node, the expansion of node is over
+     */
+    public int resolveTransposition(int node, long hash) {
+        if (transpositions == null) {
+            return node;
+        }
+        int canonical = transpositions.findOrAdd(hash, node);
+        if (canonical == NONE || canonical == node) {
+            return node; // registered (or table full: the node is just not shared)
+        }
+        alias[node >>> CHUNK_BITS][node & CHUNK_MASK] = canonical;
+        first_child[node >>> CHUNK_BITS].set(node & CHUNK_MASK, ALIAS); // publishes the alias
+        return canonical;
+    }
+
+    /**
+     * Node whose children and position statistics stand for this node: its canonical node if it is an alias.
+     *
+     * @param node
+     * @return
+     */
+    public int getCanonical(int node) {
+        if (first_child[node >>> CHUNK_BITS].get(node & CHUNK_MASK) == ALIAS) {
+            return alias[node >>> CHUNK_BITS][node & CHUNK_MASK];
+        }
+        return node;
+    }
+
+    /**
+     * Visit count of a node as seen by selection and by the final move choice (canonical node's with SHARED,
+     * the node's own otherwise).
+     *
+     * @param node
+     * @return
+     */
+    public int getSelectionVisits(int node) {
+        return getVisits(backup_rule == BackupRule.SHARED ? getCanonical(node) : node);
+    }
+
+    /**
+     * Mean score of a node as seen by selection (the canonical node's with SHARED and UCT2).
+     *
+     * @param node
+     * @return 0 if there is no visit yet
+     */
+    public double getSelectionMean(int node) {
+        int n = node;
+        if (backup_rule != BackupRule.TREE) {
+            int canonical = getCanonical(node);
+            if (getVisits(canonical) > 0) {
+                n = canonical;
+            }
+        }
+        int v = getVisits(n);
+        return v == 0 ? 0 : getScore(n) / v;
+    }
+
+    public BackupRule getBackupRule() {
+        return backup_rule;
+    }
+
+    /**
+     * MCTS-Solver. Proofs are kept on canonical nodes: pass getCanonical(node).
+     */
+    //-------------------------------------------
+    public byte getProof(int node) {
+        return proof[node >>> CHUNK_BITS][node & CHUNK_MASK];
+    }
+
+    public void setProof(int node, byte value) {
+        proof[node >>> CHUNK_BITS][node & CHUNK_MASK] = value;
+    }
+
+    /**
+     * Prove a node from its children if they allow it. Children are from the other player's point of view:
+     * - one child is a proven win: the node is a proven loss for its mover,
+     * - every child is a proven loss: the node is a proven win,
+     * - every child is proven, with draws but no win: the node is a proven draw.
+     * The last two need every move of the node to have a child (see progressive widening).
+     *
+     * @param node canonical node
+     * @return the node's proof (UNKNOWN if it cannot be proven yet)
+     */
+    public byte updateProof(int node) {
+        byte current = getProof(node);
+        boolean complete = isComplete(node); // read before the children, see finishWidening()
+        int first = getFirstChild(node);
+        if (current != UNKNOWN || first == NONE) {
+            return current;
+        }
+        boolean all_proven = true;
+        boolean any_draw = false;
+        for (int c = first; c != NONE; c = getNextSibling(c)) {
+            byte child_proof = getProof(getCanonical(c));
+            if (child_proof == PROVEN_WIN) {
+                setProof(node, PROVEN_LOSS);
+                return PROVEN_LOSS;
+            } else if (child_proof == UNKNOWN) {
+                all_proven = false;
+            } else if (child_proof == PROVEN_DRAW) {
+                any_draw = true;
+            }
+        }
+        if (!all_proven || !complete) {
+            return UNKNOWN;
+        }
+        byte value = any_draw ? PROVEN_DRAW : PROVEN_WIN;
+        setProof(node, value);
+        return value;
+    }
+    //-------------------------------------------
+
+    /**
+     * Retrieve the 'best' node to play after the search: a proven win if there is one, otherwise the child with
+     * the highest visit count, leaving proven losses out unless there is nothing else.
+     *
+     * @param node
+     * @return child id, or NONE if the node has no children
+     */
+    public int pickChildWithMostVisits(int node) {
+        int highest = -1;
+        int best = NONE;
+        boolean best_lost = true;
+        for (int c = getFirstChild(node); c != NONE; c = getNextSibling(c)) {
+            byte child_proof = getProof(getCanonical(c));
+            if (child_proof == PROVEN_WIN) {
+                return c;
+            }
+            boolean lost = child_proof == PROVEN_LOSS;
+            int v = getSelectionVisits(c);
+            if ((best_lost && !lost) || (lost == best_lost && v > highest)) {
+                highest = v;
+                best = c;
+                best_lost = lost;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Record the outcome of one playout at a node.
+     *
+     * @param node
+     * @param add_score
+     */
+    public void update(int node, double add_score) {
+        update(node, getCanonical(node), add_score, 1, 0);
+    }
+
+    /**
+     * Record the outcome of a batch of playouts at a node that was given virtual losses on the way down:
+     * those visits are already counted, so only the missing visits and the score are added.
+     * The canonical node must be the one the virtual losses went to (a leaf can become an alias in between).
+     *
+     * @param node
+     * @param canonical    getCanonical(node) when the virtual losses were added
+     * @param add_score    total score of the playouts
+     * @param playouts     number of playouts
+     * @param virtual_loss visits added by addVirtualLoss() during this traversal
+     */
+    public void update(int node, int canonical, double add_score, int playouts, int virtual_loss) {
+        long delta = (playouts - virtual_loss) * VISIT_ONE + Math.round(add_score * SCORE_SCALE);
+        addToStats(node, canonical, delta);
+    }
+
+    /**
+     * Count visits (with no score, ie: losses for the mover) on a node a playout is going through, so that
+     * other threads selecting concurrently are steered to other paths until the playout is backed up.
+     *
+     * @param node
+     * @param canonical    getCanonical(node)
+     * @param virtual_loss
+     */
+    public void addVirtualLoss(int node, int canonical, int virtual_loss) {
+        if (virtual_loss != 0) {
+            addToStats(node, canonical, virtual_loss * VISIT_ONE);
+        }
+    }
+
+    // Add to the statistics the backup rule updates for a node: its own, its canonical node's, or both
+    private void addToStats(int node, int canonical, long delta) {
+        if (backup_rule == BackupRule.TREE) {
+            canonical = node;
+        }
+        if (backup_rule != BackupRule.SHARED || canonical == node) {
+            stats[node >>> CHUNK_BITS].getAndAdd(node & CHUNK_MASK, delta);
+        }
+        if (canonical != node) {
+            stats[canonical >>> CHUNK_BITS].getAndAdd(canonical & CHUNK_MASK, delta);
+        }
+    }
+
+    /**
+     * RAVE: record one playout in which the node's move was played by the same player later on.
+     *
+     * @param node
+     * @param add_score score of that playout for the player of the move
+     */
+    public void updateAmaf(int node, double add_score) {
+        amaf[node >>> CHUNK_BITS].getAndAdd(node & CHUNK_MASK, VISIT_ONE + Math.round(add_score * SCORE_SCALE));
+    }
+
+    public boolean hasAmaf() {
+        return amaf_enabled;
+    }
+
+    public int getAmafVisits(int node) {
+        return (int) (amaf[node >>> CHUNK_BITS].get(node & CHUNK_MASK) >>> VISIT_SHIFT);
+    }
+
+    public double getAmafScore(int node) {
+        return (amaf[node >>> CHUNK_BITS].get(node & CHUNK_MASK) & SCORE_MASK) / SCORE_SCALE;
+    }
+
+    /**
+     * Getters.
+     */
+    public int getRoot() {
+        return 0;
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    public int getMaxNodes() {
+        return max_nodes;
+    }
+
+    public int getParent(int node) {
+        return parent[node >>> CHUNK_BITS][node & CHUNK_MASK];
+    }
+
+    public int getFirstChild(int node) {
+        int first = first_child[node >>> CHUNK_BITS].get(node & CHUNK_MASK);
+        return first < 0 ? NONE : first;
+    }
+
+    public int getNextSibling(int node) {
+        return next_sibling[node >>> CHUNK_BITS][node & CHUNK_MASK];
+    }
+
+    public int getMove(int node) {
+        return move[node >>> CHUNK_BITS][node & CHUNK_MASK];
+    }
+
+    public int getVisits(int node) {
+        return (int) (stats[node >>> CHUNK_BITS].get(node & CHUNK_MASK) >>> VISIT_SHIFT);
+    }
+
+    public double getScore(int node) {
+        return (stats[node >>> CHUNK_BITS].get(node & CHUNK_MASK) & SCORE_MASK) / SCORE_SCALE;
+    }
+
+    public int numChildren(int node) {
+        int n = 0;
+        for (int c = getFirstChild(node); c != NONE; c = getNextSibling(c)) {
+            n++;
+        }
+        return n;
+    }
+
+    /**
+     * Reserve count consecutive node ids, allocating chunks as needed.
+     *
+     * @return first id, or NONE if the node budget would be exceeded
+     */
+    private int allocate(int count) {
+        int first;
+        do {
+            first = size.get();
+            if (first + count > max_nodes) {
+                return NONE;
+            }
+        } while (!size.compareAndSet(first, first + count));
+        if (allocated_chunks * CHUNK_SIZE < first + count) {
+            allocateChunks(first + count);
+        }
+        return first;
+    }
+
+    private synchronized void allocateChunks(int needed) {
+        int c = allocated_chunks;
+        while (c * CHUNK_SIZE < needed) {
+            parent[c] = new int[CHUNK_SIZE];
+            next_sibling[c] = new int[CHUNK_SIZE];
+            move[c] = new int[CHUNK_SIZE];
+            alias[c] = new int[CHUNK_SIZE];
+            proof[c] = new byte[CHUNK_SIZE];
+            first_child[c] = new AtomicIntegerArray(CHUNK_SIZE);
+            width[c] = new AtomicIntegerArray(CHUNK_SIZE);
+            stats[c] = new AtomicLongArray(CHUNK_SIZE);
+            if (amaf_enabled) {
+                amaf[c] = new AtomicLongArray(CHUNK_SIZE);
+            }
+            c++;
+        }
+        allocated_chunks = c; // volatile write, chunks are visible to whoever sees the new count
+    }
+
+    private void initNode(int node, int parent_node, int node_move) {
+        int chunk = node >>> CHUNK_BITS;
+        int offset = node & CHUNK_MASK;
+        parent[chunk][offset] = parent_node;
+        next_sibling[chunk][offset] = NONE;
+        move[chunk][offset] = node_move;
+        proof[chunk][offset] = UNKNOWN;
+        stats[chunk].set(offset, 0L);
+        if (amaf_enabled) {
+            amaf[chunk].set(offset, 0L);
+        }
+        width[chunk].set(offset, 0);
+        first_child[chunk].set(offset, NONE);
+    }
+}
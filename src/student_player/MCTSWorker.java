@@ -0,0 +1,479 @@
+package student_player;
+
+import boardgame.Board;
+import pentago_twist.PentagoBitboard;
+import pentago_twist.PentagoLines;
+import pentago_twist.PentagoMoveList;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class MCTSWorker implements Runnable {
+
+    /**
+     * This MCTSWorker.java class runs the select/expand/rollout/backpropagate loop on a MCTSTree.
+     * Its scratch board, move buffer and rollout engine belong to it, so several workers can search on
+     * different threads: either each on its own tree (root parallelization), or all on the same tree
+     * (tree parallelization), see MCTSExecuter. MCTSTree is lock-free, so a shared tree needs no locking here;
+     * virtual losses keep the workers sharing a tree from all descending the same path.
+     *
+     * MCTS-Solver: terminal positions reached by the search are proven wins, losses or draws, and proofs are carried
+     * up the path (see MCTSTree.updateProof). Selection leaves proven nodes alone, and the search stops as soon as
+     * the root itself is proven, since no more playouts can change the decision.
+     *
+     * RAVE: with a RaveSchedule other than NONE, every playout also updates the all-moves-as-first statistics of the
+     * children along its path whose move was played later by the same player, and selection blends them with the
+     * plain UCT value. Their weight beta goes from 1 (no visit) down to 0 as the child gets visits.
+     *
+     * Progressive widening: with MyTools.PROGRESSIVE_WIDENING, a node with N visits only gets the ceil(k * N^alpha)
+     * best children by a cheap prior (value of the placed square for open lines), and more as its visits grow. Most nodes are
+     * visited once or twice, so most of the children a full expansion creates are never used.
+     */
+
+    /**
+     * How much weight the AMAF value gets, for a child with n visits and m AMAF visits.
+     * NONE: no RAVE, plain UCT.
+     * EQUIVALENCE: beta = sqrt(k / (3n + k)), k being the number of visits at which both values weigh the same.
+     * MINIMUM_MSE: beta = m / (n + m + 4 b^2 n m), b being the estimated bias of the AMAF value.
+     */
+    public enum RaveSchedule {
+        NONE, EQUIVALENCE, MINIMUM_MSE
+    }
+
+    // Constants
+    private static final double SCALING_CONSTANT = Math.sqrt(2); // UCT scaling constant
+    private static final int MAX_PATH = PentagoBitboard.NUM_SQUARES + 1; // root + one node per ply
+    private static final int MOVE_KEYS = 1 << 9; // encoded moves (see PentagoBitboard.encodeMove)
+    private static final int[] PRIOR_WEIGHTS = {0, 1, 3, 9, 27, 81}; // open line with 0-5 pieces of a colour
+
+    // Search tree (struct-of-arrays, see MCTSTree) and scratch state reused across iterations
+    private MCTSTree search_tree;
+    private int virtual_loss;
+    private int leaf_rollouts;
+    private PentagoBitboard board = new PentagoBitboard();
+    private PentagoMoveList moves = new PentagoMoveList();
+    private int[] path = new int[MAX_PATH];
+    private int[] path_canonical = new int[MAX_PATH]; // canonical node of each path node when it was entered
+    private int path_length;
+    private RolloutEngine rollout_engine; // playouts, and random numbers for the default policy
+    private int AGENT;
+    private int OPPONENT;
+    private long endtime;
+    private RaveSchedule rave_schedule;
+    private int[] amaf_seen = new int[2 * MOVE_KEYS]; // player * MOVE_KEYS + move -> stamp of the playout playing it
+    private int amaf_stamp;
+    private boolean widening;
+    private long[] prior_keys = new long[PentagoMoveList.MAX_MOVES]; // prior << 16 | index, see rankMoves()
+    private int[] unranked_moves = new int[PentagoMoveList.MAX_MOVES];
+    private int[] ranked_moves = new int[PentagoMoveList.MAX_MOVES];
+    private int[] square_prior = new int[PentagoBitboard.NUM_SQUARES];
+    private AtomicBoolean solved = new AtomicBoolean(); // shared by the workers of one search
+
+    // Aggregated outcome of the playouts run from the current leaf
+    private double agent_score;
+    private double opponent_score;
+
+    /**
+     * Constructor.
+     *
+     * @param search_tree  tree to search, possibly shared with other workers
+     * @param seed         seed of this worker's rollout engine (workers must not share a sequence)
+     * @param virtual_loss  visits counted as losses on a path while a playout is in flight (0 on a private tree)
+     * @param leaf_rollouts number of playouts run from each selected leaf and backed up together (leaf parallelization)
+     */
+    public MCTSWorker(MCTSTree search_tree, long seed, int virtual_loss, int leaf_rollouts) {
+        this.search_tree = search_tree;
+        this.rollout_engine = new RolloutEngine(seed);
+        this.virtual_loss = virtual_loss;
+        this.leaf_rollouts = Math.max(1, leaf_rollouts);
+        this.rave_schedule = search_tree.hasAmaf() ? MyTools.RAVE_SCHEDULE : RaveSchedule.NONE;
+        this.widening = MyTools.PROGRESSIVE_WIDENING;
+    }
+
+    /**
+     * Get ready to search from the tree's current root position until the end time.
+     *
+     * @param endtime
+     */
+    public void prepare(long endtime) {
+        prepare(endtime, new AtomicBoolean());
+    }
+
+    /**
+     * Get ready to search until the end time, or until any worker sharing the flag proves its root.
+     *
+     * @param endtime
+     * @param solved  stop flag shared by the workers of this search
+     */
+    public void prepare(long endtime, AtomicBoolean solved) {
+        this.endtime = endtime;
+        this.solved = solved;
+        rollout_engine.resetStats();
+        AGENT = search_tree.getRootPosition().getTurnPlayer();
+        OPPONENT = 1 - AGENT;
+    }
+
+    /**
+     * Search until the end time.
+     */
+    @Override
+    public void run() {
+        while (System.currentTimeMillis() < endtime && !solved.get()) { // given time allowed at each move
+
+            // SELECTION (plays the selected moves on the scratch board)
+            int selected = select(search_tree.getRoot());
+
+            // EXPANSION (fails if another worker is expanding the same node, we then roll out from the leaf)
+            if (board.getWinner() == Board.NOBODY) {
+                // If this is not a leaf node (ie: if there is no winner yet for this game), expand search tree.
+                int expanded = expand(selected);
+                if (expanded != MCTSTree.NONE) {
+                    // Simplest heuristic, get a random child of the promising expanded node to rollout
+                    int simulate_node = selectUsingDefaultPolicy(expanded);
+                    board.doMove(search_tree.getMove(simulate_node));
+                    enterNode(simulate_node);
+                }
+            }
+
+            // ROLLOUT
+            rolloutBatch(); // play the simulation(s)
+
+            // BACKPROPAGATION
+            backpropagate();
+            backpropagateProof();
+
+        }
+    }
+
+    /**
+     * MCTS methods for performing algorithm.
+     * 1. Selection
+     * 2. Expansion
+     * 3. Simulation
+     * 4. Backpropagation
+     */
+
+    /**
+     * Determine the most promising child (tree leaf) from a given start node to explore based on UCT computations.
+     * The scratch board is reset to the root position and every move along the way is played on it,
+     * so that it holds the position of the returned leaf. The path from the root is recorded for backpropagation.
+     *
+     * @param start_node
+     * @return
+     */
+    public int select(int start_node) {
+        board.copyFrom(search_tree.getRootPosition());
+        path_length = 0;
+        int n = start_node;
+        enterNode(n);
+        // Get all the way down to a leaf node in our mcts tree (going on through the canonical node of aliases),
+        // or to a proven node: its value is known, there is nothing to learn below it
+        while (search_tree.getFirstChild(path_canonical[path_length - 1]) != MCTSTree.NONE
+                && search_tree.getProof(path_canonical[path_length - 1]) == MCTSTree.UNKNOWN) { // as long as we have children to select from to expand
+            int parent = path_canonical[path_length - 1];
+            widen(parent, false);
+            n = selectUsingTreePolicy(parent); // will recurse on the most promising node at each iteration!
+            if (search_tree.getProof(search_tree.getCanonical(n)) != MCTSTree.UNKNOWN && widen(parent, true)) {
+                n = selectUsingTreePolicy(parent); // every child so far is proven, try a new one
+            }
+            board.doMove(search_tree.getMove(n));
+            enterNode(n);
+        }
+        // return leaf node from our mcts tree which has the best UCT value
+        return n;
+    }
+
+    /**
+     * Append a node to the path of the current playout, with virtual loss.
+     * Its canonical node is recorded now, so that the backup goes where the virtual loss went.
+     *
+     * @param n
+     */
+    private void enterNode(int n) {
+        int canonical = search_tree.getCanonical(n);
+        search_tree.addVirtualLoss(n, canonical, virtual_loss);
+        path[path_length] = n;
+        path_canonical[path_length] = canonical;
+        path_length++;
+    }
+
+    /**
+     * Monte Carlo Upper Confidence Tree Computations.
+     */
+    //-------------------------------------------
+    // Compute UCT
+    public double compute_uct(int visit_at_node, double node_score, int total_visits) {
+        if (visit_at_node == 0) {
+            return Integer.MAX_VALUE;
+        }
+        double exploitation = (node_score) / (double) visit_at_node;
+        double exploration = SCALING_CONSTANT * Math.sqrt(Math.log(total_visits) / (double) visit_at_node);
+        double uct_value = exploitation + exploration;
+        return uct_value;
+    }
+
+    // Compute UCT with the mean score blended with the AMAF mean (RAVE). Unvisited children are still tried first.
+    public double compute_rave_uct(int visit_at_node, double node_mean, int amaf_visits, double amaf_score, int total_visits) {
+        if (amaf_visits == 0 || visit_at_node == 0) {
+            return compute_uct(visit_at_node, node_mean * visit_at_node, total_visits);
+        }
+        double beta;
+        if (rave_schedule == RaveSchedule.EQUIVALENCE) {
+            beta = Math.sqrt(MyTools.RAVE_EQUIVALENCE / (3.0 * visit_at_node + MyTools.RAVE_EQUIVALENCE));
+        } else {
+            double bias = 4 * MyTools.RAVE_BIAS * MyTools.RAVE_BIAS;
+            beta = amaf_visits / (visit_at_node + amaf_visits + bias * visit_at_node * amaf_visits);
+        }
+        double exploitation = (1 - beta) * node_mean + beta * (amaf_score / amaf_visits);
+        double exploration = SCALING_CONSTANT * Math.sqrt(Math.log(Math.max(1, total_visits)) / Math.max(1, visit_at_node));
+        return exploitation + exploration;
+    }
+
+    // Select best child node to expand. Visits include the virtual losses of playouts in flight;
+    // with transpositions, the values of shared positions come from their canonical node.
+    // Proven children are skipped (a proven win would already have proven the parent), unless all of them are.
+    public int selectUsingTreePolicy(int n) {
+        // Parent
+        int visits_parents = search_tree.getVisits(n);
+        // For comparison
+        double best = Integer.MIN_VALUE;
+        double curr;
+        int node = MCTSTree.NONE;
+        int proven = MCTSTree.NONE;
+        // Simply get all the children for given node, compute UCT for each, and select best one.
+        for (int c = search_tree.getFirstChild(n); c != MCTSTree.NONE; c = search_tree.getNextSibling(c)) {
+            if (search_tree.getProof(search_tree.getCanonical(c)) != MCTSTree.UNKNOWN) {
+                proven = c;
+                continue;
+            }
+            int visits = search_tree.getSelectionVisits(c);
+            if (rave_schedule == RaveSchedule.NONE) {
+                curr = compute_uct(visits, search_tree.getSelectionMean(c) * visits, visits_parents);
+            } else {
+                curr = compute_rave_uct(visits, search_tree.getSelectionMean(c), search_tree.getAmafVisits(c),
+                        search_tree.getAmafScore(c), visits_parents);
+            }
+            if (curr > best) { // if better than current best, save node
+                best = curr;
+                node = c;
+            }
+        }
+        return node != MCTSTree.NONE ? node : proven;
+    }
+
+    // Default policy: simply select a child at random
+    public int selectUsingDefaultPolicy(int n) {
+        int selected = rollout_engine.nextInt(search_tree.numChildren(n));
+        int c = search_tree.getFirstChild(n);
+        for (int i = 0; i < selected; i++) {
+            c = search_tree.getNextSibling(c);
+        }
+        return c;
+    }
+    //-------------------------------------------
+
+    /**
+     * Expand a promising node which is not a leaf (no winner yet).
+     * The scratch board must hold the position of the node.
+     * With transpositions, a node whose position already has a node in the tree becomes an alias of it instead,
+     * and the search goes on from the children of that canonical node.
+     *
+     * @param node
+     * @return node whose children the playout continues from, or MCTSTree.NONE if nothing was expanded
+     * (tree full, or another worker expanded the node first)
+     */
+    //-------------------------------------------
+    public int expand(int node) {
+        int target = search_tree.getCanonical(node);
+        if (!search_tree.beginExpansion(target)) {
+            return MCTSTree.NONE;
+        }
+        int canonical = search_tree.resolveTransposition(target, board.getHash());
+        if (canonical != target) {
+            return search_tree.getFirstChild(canonical) != MCTSTree.NONE ? canonical : MCTSTree.NONE;
+        }
+        if (widening) {
+            // Only the best few children by prior to start with, see widen()
+            int total = rankMoves();
+            int count = Math.min(total, allowedChildren(search_tree.getVisits(target)));
+            return search_tree.finishExpansion(target, ranked_moves, count, count == total) ? target : MCTSTree.NONE;
+        }
+        // One child per distinct resulting board state, allocated contiguously in the tree arrays
+        board.generateDistinctMoves(moves);
+        return search_tree.finishExpansion(target, moves.getBuffer(), moves.size()) ? target : MCTSTree.NONE;
+    }
+
+    /**
+     * Progressive widening: give a node the next children in prior order if its visits allow more.
+     * The scratch board must hold the position of the node.
+     *
+     * @param node  canonical node with children
+     * @param force add at least one child (all the current ones are proven)
+     * @return whether children were added
+     */
+    public boolean widen(int node, boolean force) {
+        if (!widening || search_tree.isComplete(node)) {
+            return false;
+        }
+        int allowed = allowedChildren(search_tree.getVisits(node));
+        if (force) {
+            allowed = Math.max(allowed, search_tree.getWidth(node) + 1);
+        }
+        if (search_tree.getWidth(node) >= allowed || !search_tree.beginWidening(node)) {
+            return false;
+        }
+        // The moves are ranked the same way as when the node was expanded, so its children are the first ones
+        int total = rankMoves();
+        int from = search_tree.getWidth(node);
+        int to = Math.min(total, Math.max(allowed, 2 * from)); // at least double, so a node is ranked O(log) times
+        int count = Math.max(0, to - from);
+        System.arraycopy(ranked_moves, from, ranked_moves, 0, count);
+        return search_tree.finishWidening(node, ranked_moves, count, to >= total) && count > 0;
+    }
+
+    // Number of children a node with this many visits may have
+    private int allowedChildren(int visits) {
+        return (int) Math.ceil(MyTools.WIDENING_K * Math.pow(Math.max(1, visits), MyTools.WIDENING_ALPHA));
+    }
+
+    /**
+     * Generate the distinct moves of the scratch board and sort them into ranked_moves, best prior first.
+     * The prior only looks at the placement (playing every move to score it would cost more than the expansion
+     * saves): on each line through the square, what the piece adds to the mover's open line and what it takes
+     * from the opponent's. Ties keep the generation order, so the ranking of a position is always the same.
+     *
+     * @return number of moves
+     */
+    private int rankMoves() {
+        int n = board.generateDistinctMoves(unranked_moves);
+        long own = board.getPieces(board.getTurnPlayer());
+        long other = board.getPieces(1 - board.getTurnPlayer());
+        for (long empty = board.getEmpty(); empty != 0; empty &= empty - 1) {
+            int sq = Long.numberOfTrailingZeros(empty);
+            int prior = 0;
+            for (int line : PentagoLines.linesThrough(sq)) {
+                if (PentagoLines.isOpen(other, line)) {
+                    prior += PRIOR_WEIGHTS[PentagoLines.count(own, line) + 1]; // extends our line
+                }
+                if (PentagoLines.isOpen(own, line)) {
+                    prior += PRIOR_WEIGHTS[PentagoLines.count(other, line)]; // blocks theirs
+                }
+            }
+            square_prior[sq] = prior;
+        }
+        for (int i = 0; i < n; i++) {
+            // Ascending sort: negated prior, then generation index
+            int prior = square_prior[PentagoBitboard.moveSquare(unranked_moves[i])];
+            prior_keys[i] = ((long) -prior << 16) | i;
+        }
+        Arrays.sort(prior_keys, 0, n);
+        for (int i = 0; i < n; i++) {
+            ranked_moves[i] = unranked_moves[(int) (prior_keys[i] & 0xFFFF)];
+        }
+        return n;
+    }
+    //-------------------------------------------
+
+    /**
+     * Run leaf_rollouts simulations from the leaf on the scratch board, all starting from the same position,
+     * and add up their outcomes for both players. Several playouts per traversal give a lower variance value
+     * for the leaf for the price of a single selection.
+     * A draw is worth half a win to both players; a playout cut off by the engine is worth its estimated
+     * probability of winning to our agent and the rest to the opponent.
+     */
+    //-------------------------------------------
+    public void rolloutBatch() {
+        agent_score = 0;
+        opponent_score = 0;
+        for (int i = 0; i < leaf_rollouts; i++) {
+            rollout_engine.play(board); // the scratch board is left on the leaf
+            double value = rollout_engine.getValue(AGENT);
+            if (rave_schedule != RaveSchedule.NONE) {
+                backpropagateAmaf(value);
+            }
+            agent_score += value;
+            opponent_score += 1 - value;
+        }
+    }
+    //-------------------------------------------
+
+    /**
+     * Perform backprogation, updating visits and score values of nodes involved in the last playouts.
+     * A node's score is from the point of view of the player who made the move leading to it:
+     * nodes at odd depth are our agent's moves, nodes at even depth the opponent's.
+     */
+    //-------------------------------------------
+    public void backpropagate() {
+        for (int depth = path_length - 1; depth >= 0; depth--) { // all the way back up to root of our MCTS
+            double add_score = (depth % 2 == 1) ? agent_score : opponent_score;
+            search_tree.update(path[depth], path_canonical[depth], add_score, leaf_rollouts, virtual_loss);
+        }
+    }
+    //-------------------------------------------
+
+    /**
+     * RAVE: update the AMAF statistics for the last playout. Going up the path, the moves played after each node
+     * (in the playout, then in the tree below it) are marked for the player who played them; every child of the node
+     * whose move the player to move there played later gets that player's result.
+     *
+     * @param agent_value result of the playout for our agent (see RolloutEngine.getValue)
+     */
+    //-------------------------------------------
+    public void backpropagateAmaf(double agent_value) {
+        amaf_stamp++;
+        int player = board.getTurnPlayer(); // the scratch board is on the leaf the playout started from
+        for (int i = 0; i < rollout_engine.getPlayedCount(); i++) {
+            amaf_seen[player * MOVE_KEYS + rollout_engine.getPlayedMove(i)] = amaf_stamp;
+            player = 1 - player;
+        }
+        for (int depth = path_length - 2; depth >= 0; depth--) {
+            player = (depth % 2 == 0) ? AGENT : OPPONENT; // player to move at this depth
+            amaf_seen[player * MOVE_KEYS + search_tree.getMove(path[depth + 1])] = amaf_stamp;
+            double score = (player == AGENT) ? agent_value : 1 - agent_value;
+            for (int c = search_tree.getFirstChild(path_canonical[depth]); c != MCTSTree.NONE; c = search_tree.getNextSibling(c)) {
+                if (amaf_seen[player * MOVE_KEYS + search_tree.getMove(c)] == amaf_stamp) {
+                    search_tree.updateAmaf(c, score);
+                }
+            }
+        }
+    }
+    //-------------------------------------------
+
+    /**
+     * MCTS-Solver: prove the leaf of the last playout if the game is over there, then carry its proof up the path
+     * for as long as parents get proven. Raises the stop flag when the root is proven.
+     * The scratch board must still hold the leaf position.
+     */
+    //-------------------------------------------
+    public void backpropagateProof() {
+        int depth = path_length - 1;
+        int leaf = path_canonical[depth];
+        int winner = board.getWinner();
+        if (winner != Board.NOBODY && search_tree.getProof(leaf) == MCTSTree.UNKNOWN) {
+            int mover = (depth % 2 == 1) ? AGENT : OPPONENT; // player who moved into the leaf
+            if (winner == Board.DRAW) {
+                search_tree.setProof(leaf, MCTSTree.PROVEN_DRAW);
+            } else {
+                search_tree.setProof(leaf, winner == mover ? MCTSTree.PROVEN_WIN : MCTSTree.PROVEN_LOSS);
+            }
+        }
+        if (search_tree.getProof(leaf) == MCTSTree.UNKNOWN) {
+            return;
+        }
+        for (depth--; depth >= 0; depth--) {
+            if (search_tree.updateProof(path_canonical[depth]) == MCTSTree.UNKNOWN) {
+                return;
+            }
+        }
+        solved.set(true); // the root is proven
+    }
+    //-------------------------------------------
+
+    public MCTSTree getTree() {
+        return search_tree;
+    }
+
+    public RolloutEngine getRolloutEngine() {
+        return rollout_engine;
+    }
+}
@@ -1,14 +1,35 @@
 package student_player;
 
+import pentago_twist.PentagoBitboard;
 import pentago_twist.PentagoBoardState;
+import pentago_twist.PentagoMove;
 
-import java.util.Random;
+import java.util.ArrayList;
 
 public class MyTools {
 
     public static boolean DEBUG_MODE = false;
     public static int FIRST_MOVE_TIME = 12000;
     public static int REGULAR_MOVE_TIME = 1950;
+    public static boolean USE_ALPHA_BETA = true; // search with AlphaBetaSearch instead of MCTS
+    public static int TT_SIZE_MB = 64; // AlphaBetaSearch transposition table (the client heap is 520 MB)
+    public static double TREE_HEAP_FRACTION = 0.25; // share of the heap the MCTS tree may use
+    public static MCTSTree.BackupRule BACKUP_RULE = MCTSTree.BackupRule.UCT2; // transpositions (TREE: none)
+    public static int SEARCH_THREADS = Runtime.getRuntime().availableProcessors(); // parallel MCTS workers
+    public static MCTSExecuter.ParallelMode PARALLEL_MODE = MCTSExecuter.ParallelMode.ROOT;
+    public static MCTSExecuter.MergeRule MERGE_RULE = MCTSExecuter.MergeRule.SUM_VISITS; // ROOT mode only
+    public static int VIRTUAL_LOSS = 3; // TREE mode only
+    public static int LEAF_ROLLOUTS = 1; // playouts per selected leaf, backed up as one batch
+    public static RolloutEngine.Sampling ROLLOUT_SAMPLING = RolloutEngine.Sampling.TACTICAL; // rollout policy
+    public static boolean ROLLOUT_REJECT_NOOP_TWISTS = true;
+    public static int ROLLOUT_CUTOFF_PLIES = 0; // stop playouts after this many plies and evaluate (0: play to the end)
+    public static String EVAL_WEIGHTS_FILE = "./data/eval_weights.txt"; // see StaticEvaluator
+    public static MCTSWorker.RaveSchedule RAVE_SCHEDULE = MCTSWorker.RaveSchedule.NONE; // plain UCT, RAVE did not win more games
+    public static double RAVE_EQUIVALENCE = 1000; // EQUIVALENCE schedule: visits at which UCT and AMAF weigh the same
+    public static double RAVE_BIAS = 0.1; // MINIMUM_MSE schedule: estimated bias of the AMAF value
+    public static boolean PROGRESSIVE_WIDENING = true; // a node with N visits has ceil(k * N^alpha) children
+    public static double WIDENING_K = 2;
+    public static double WIDENING_ALPHA = 0.5;
 
     /**
      * Simple print function with debug parameter. Can toggle debug ON or OFF.
@@ -59,26 +80,38 @@ public class MyTools {
     }
 
     /**
-     * Simple wrapper for generating a random number between a 'min' and 'max'.
+     * Determine if this is our agent's first move or not.
      *
-     * @param min
-     * @param max
+     * @param pbs
      * @return
      */
-    public static int getRandomNumber(int min, int max) {
-        Random r = new Random();
-        int random_int = r.nextInt(max - min) + min;
-        return random_int;
+    public static boolean isAgentFirstMove(PentagoBoardState pbs) {
+        return pbs.getTurnNumber() == 0;
     }
 
     /**
-     * Determine if this is our agent's first move or not.
+     * Trim moves from list which lead to same board state.
+     * This effectively reduces the branching factor at each step.
      *
      * @param pbs
+     * @param all_moves
      * @return
      */
-    public static boolean isAgentFirstMove(PentagoBoardState pbs) {
-        return pbs.getTurnNumber() == 0;
+    public static ArrayList<PentagoMove> trimLegalMoves(PentagoBoardState pbs, ArrayList<PentagoMove> all_moves) {
+        // Keep track of trimmed moves and seen states
+        ArrayList<PentagoMove> trimmed_moves = new ArrayList<>();
+        LongHashSet seen_states = new LongHashSet(all_moves.size());
+        PentagoBitboard board = pbs.getBitboard();
+        // For each possible move, check if playing that move would lead to a board configuration which we can already
+        // reach from another move. If so, discard that move.
+        for (PentagoMove pm : all_moves) {
+            // The Zobrist key of the resulting position is computed straight from the move (no clone, no string).
+            // If we have never seen this state, save the move as a possible move in our trimmed list.
+            if (seen_states.add(board.hashAfter(pm.encode()))) {
+                trimmed_moves.add(pm);
+            }
+        }
+        return trimmed_moves;
     }
 
 }
\ No newline at end of file
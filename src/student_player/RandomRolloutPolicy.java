@@ -0,0 +1,67 @@
+package student_player;
+
+import pentago_twist.PentagoBitboard;
+import pentago_twist.PentagoMoveList;
+
+public class RandomRolloutPolicy implements RolloutPolicy {
+
+    /**
+     * This RandomRolloutPolicy.java class plays random moves, in one of two ways:
+     * - distinct: uniformly among the distinct moves (full move generation at every ply),
+     * - fast: a random empty square, quadrant and twist in O(1), without building a move list. Moves that lead to
+     * the same position are not merged, so the distribution is not uniform over positions, but it is much cheaper.
+     */
+
+    private static final int MAX_TWIST_TRIES = 8; // when rejecting twists that do not change the board
+
+    private PentagoMoveList moves = new PentagoMoveList();
+    private boolean distinct;
+    private boolean reject_noop_twists;
+
+    /**
+     * Constructor.
+     *
+     * @param distinct           sample among distinct moves rather than in O(1)
+     * @param reject_noop_twists in O(1) sampling, redraw twists that leave their quadrant unchanged
+     */
+    public RandomRolloutPolicy(boolean distinct, boolean reject_noop_twists) {
+        this.distinct = distinct;
+        this.reject_noop_twists = reject_noop_twists;
+    }
+
+    @Override
+    public int selectMove(PentagoBitboard board, RolloutEngine engine) {
+        if (distinct) {
+            board.generateDistinctMoves(moves);
+            return moves.get(engine.nextInt(moves.size()));
+        }
+        // The k-th empty square by popcount/select, then quadrant and twist from the same random draw
+        long empty = board.getEmpty();
+        long r = engine.nextLong();
+        int sq = PentagoBitboard.selectSquare(empty, (int) (((r >>> 32) * Long.bitCount(empty)) >>> 32));
+        return withRandomTwist(board, sq, r, reject_noop_twists);
+    }
+
+    /**
+     * Complete a placement with a random quadrant and twist taken from the low bits of a random draw.
+     * Optionally, twists that would not change the board are redrawn a few times (3 bits per try).
+     *
+     * @param board
+     * @param sq                 empty square to place on
+     * @param r                  random bits
+     * @param reject_noop_twists
+     * @return encoded move
+     */
+    static int withRandomTwist(PentagoBitboard board, int sq, long r, boolean reject_noop_twists) {
+        int quad = (int) r & 3;
+        int op = (int) (r >>> 2) & 1;
+        if (reject_noop_twists) {
+            for (int tries = 1; tries < MAX_TWIST_TRIES && !board.twistChanges(sq, quad, op); tries++) {
+                r >>>= 3;
+                quad = (int) r & 3;
+                op = (int) (r >>> 2) & 1;
+            }
+        }
+        return PentagoBitboard.encodeMove(sq, quad, op);
+    }
+}
@@ -0,0 +1,202 @@
+package student_player;
+
+import boardgame.Board;
+import pentago_twist.PentagoBitboard;
+
+public class RolloutEngine {
+
+    /**
+     * This RolloutEngine.java class plays random games (playouts) to the end from a given position.
+     * It owns everything a playout needs: a scratch bitboard, its own pseudo-random generator (SplitMix64) and
+     * a RolloutPolicy picking the moves, so playing a game allocates nothing. One engine per thread.
+     *
+     * It also counts playouts and the time spent in them, to report playouts per second, and keeps the moves of
+     * the last playout (for all-moves-as-first statistics, see MCTSWorker).
+     *
+     * Playouts can be cut off after a number of plies: the position reached is then scored by a StaticEvaluator,
+     * which gives shallower but many more samples in the same time. getValue() gives the result either way.
+     */
+
+    /**
+     * How a playout picks its moves, when the policy is not given directly.
+     * DISTINCT: uniformly among the distinct moves (full move generation at every ply).
+     * FAST: a random empty square, quadrant and twist in O(1), without building a move list. Moves that lead to the
+     * same position are not merged, so the distribution is not uniform over positions, but it is much cheaper.
+     * TACTICAL: wins and blocks immediate threats, otherwise weighted by line patterns (see TacticalRolloutPolicy).
+     */
+    public enum Sampling {
+        DISTINCT, FAST, TACTICAL
+    }
+
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+    private static final double WIN_SCORE = 1;
+    private static final double DRAW_SCORE = 0.5;
+
+    private PentagoBitboard board = new PentagoBitboard();
+    private RolloutPolicy policy;
+    private int[] played = new int[PentagoBitboard.NUM_SQUARES]; // encoded moves of the last playout
+    private int played_count;
+    private long rng_state;
+    private int cutoff_plies; // 0: play to the end
+    private StaticEvaluator evaluator;
+    private int last_winner;
+
+    // Statistics
+    private long playouts;
+    private long plies;
+    private long nanos;
+    private long cutoffs;
+
+    /**
+     * Constructor, using the sampling and cutoff set in MyTools.
+     *
+     * @param seed engines on different threads must use different seeds
+     */
+    public RolloutEngine(long seed) {
+        this(seed, MyTools.ROLLOUT_SAMPLING, MyTools.ROLLOUT_REJECT_NOOP_TWISTS);
+        if (MyTools.ROLLOUT_CUTOFF_PLIES > 0) {
+            setCutoff(MyTools.ROLLOUT_CUTOFF_PLIES, StaticEvaluator.getDefault());
+        }
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param seed               engines on different threads must use different seeds
+     * @param sampling           how moves are picked
+     * @param reject_noop_twists in FAST and TACTICAL sampling, redraw twists that leave their quadrant unchanged
+     */
+    public RolloutEngine(long seed, Sampling sampling, boolean reject_noop_twists) {
+        this(seed, sampling == Sampling.TACTICAL ? new TacticalRolloutPolicy(reject_noop_twists)
+                : new RandomRolloutPolicy(sampling == Sampling.DISTINCT, reject_noop_twists));
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param seed   engines on different threads must use different seeds
+     * @param policy picks the moves, must not be shared with another engine
+     */
+    public RolloutEngine(long seed, RolloutPolicy policy) {
+        this.rng_state = seed;
+        this.policy = policy;
+    }
+
+    /**
+     * Stop playouts after a number of plies and score the position reached instead.
+     *
+     * @param plies     0 to play to the end
+     * @param evaluator
+     */
+    public void setCutoff(int plies, StaticEvaluator evaluator) {
+        this.cutoff_plies = plies;
+        this.evaluator = evaluator;
+    }
+
+    /**
+     * Play a random game from the given position, which is left untouched, to the end or to the cutoff.
+     *
+     * @param from
+     * @return winner of the playout (a player, Board.DRAW), or Board.NOBODY if it was cut off
+     */
+    public int play(PentagoBitboard from) {
+        long start = System.nanoTime();
+        board.copyFrom(from);
+        // Determine a winner from a rollout of random moves
+        int winner = board.getWinner();
+        played_count = 0;
+        while (winner == Board.NOBODY) {
+            if (played_count == cutoff_plies && cutoff_plies > 0) {
+                cutoffs++;
+                break;
+            }
+            // play the policy's moves
+            int move = policy.selectMove(board, this);
+            board.play(PentagoBitboard.moveSquare(move), PentagoBitboard.moveQuad(move), PentagoBitboard.moveOp(move));
+            played[played_count++] = move;
+            plies++;
+            // update winner
+            winner = board.getWinner();
+        }
+        playouts++;
+        nanos += System.nanoTime() - start;
+        last_winner = winner;
+        return winner;
+    }
+
+    /**
+     * Result of the last playout for a player: 1 for a win, 0.5 for a draw, 0 for a loss, or the evaluator's
+     * probability of winning if it was cut off.
+     *
+     * @param player
+     * @return
+     */
+    public double getValue(int player) {
+        if (last_winner == Board.NOBODY) {
+            return evaluator.winProbability(board, player);
+        } else if (last_winner == Board.DRAW) {
+            return DRAW_SCORE;
+        }
+        return last_winner == player ? WIN_SCORE : 0;
+    }
+
+    /**
+     * SplitMix64 step.
+     *
+     * @return next 64 random bits
+     */
+    public long nextLong() {
+        long z = (rng_state += GOLDEN_GAMMA);
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Random int in [0, bound), by multiplying 32 random bits with the bound (no division, no loop).
+     * The bias is below bound / 2^32, irrelevant for at most 288 moves.
+     *
+     * @param bound
+     * @return
+     */
+    public int nextInt(int bound) {
+        return (int) (((nextLong() >>> 32) * bound) >>> 32);
+    }
+
+    /**
+     * Moves of the last playout, in order: the first one is played by the player to move in the start position.
+     */
+    public int getPlayedCount() {
+        return played_count;
+    }
+
+    public int getPlayedMove(int i) {
+        return played[i];
+    }
+
+    /**
+     * Statistics.
+     */
+    public void resetStats() {
+        playouts = 0;
+        plies = 0;
+        nanos = 0;
+        cutoffs = 0;
+    }
+
+    public long getPlayouts() {
+        return playouts;
+    }
+
+    public long getPlies() {
+        return plies;
+    }
+
+    public long getCutoffs() {
+        return cutoffs;
+    }
+
+    public double getPlayoutsPerSecond() {
+        return nanos == 0 ? 0 : playouts * 1e9 / nanos;
+    }
+}
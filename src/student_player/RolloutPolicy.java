@@ -0,0 +1,21 @@
+package student_player;
+
+import pentago_twist.PentagoBitboard;
+
+public interface RolloutPolicy {
+
+    /**
+     * This RolloutPolicy.java interface is how a RolloutEngine picks the moves of its playouts.
+     * It is called once per ply of every playout, so implementations must be fast and must not allocate:
+     * keep any buffer as a field (one policy per engine, so per thread).
+     */
+
+    /**
+     * Pick the next move of a playout.
+     *
+     * @param board  position of the playout (game not over), must be left as it is
+     * @param engine source of random numbers
+     * @return encoded move (see PentagoBitboard.encodeMove)
+     */
+    int selectMove(PentagoBitboard board, RolloutEngine engine);
+}
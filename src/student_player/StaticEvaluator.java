@@ -0,0 +1,133 @@
+package student_player;
+
+import pentago_twist.PentagoBitboard;
+import pentago_twist.PentagoLines;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+
+public class StaticEvaluator {
+
+    /**
+     * This StaticEvaluator.java class scores a position without searching it, from the open lines on the bitboards.
+     * An open line holds pieces of one colour only; for each colour we count the open lines with 2, 3 and 4 pieces.
+     * For a player:
+     * z = open2 * (own twos - opponent twos) + open3 * (...) + open4 * (...) + (tempo if the player is to move)
+     * and the estimated probability of winning is the logistic 1 / (1 + e^-z).
+     *
+     * The weights are read from a text file (MyTools.EVAL_WEIGHTS_FILE) with one "name value" pair per line,
+     * '#' starting a comment. Missing names keep their default value.
+     * An evaluator is never modified once loaded, so all threads can share one.
+     */
+
+    // Default weights (logistic regression on positions of tactical playouts, as in data/eval_weights.txt)
+    private double open2 = 0.045;
+    private double open3 = 0.21;
+    private double open4 = 0.8;
+    private double tempo = 0.155;
+
+    private static StaticEvaluator shared;
+
+    /**
+     * Constructor with the default weights.
+     */
+    public StaticEvaluator() {
+    }
+
+    /**
+     * Evaluator loaded once from MyTools.EVAL_WEIGHTS_FILE (default weights if it cannot be read).
+     *
+     * @return
+     */
+    public static synchronized StaticEvaluator getDefault() {
+        if (shared == null) {
+            shared = load(MyTools.EVAL_WEIGHTS_FILE);
+        }
+        return shared;
+    }
+
+    /**
+     * Load weights from a file.
+     *
+     * @param filename
+     * @return evaluator, with the default weights for anything the file does not set
+     */
+    public static StaticEvaluator load(String filename) {
+        StaticEvaluator evaluator = new StaticEvaluator();
+        try (BufferedReader reader = new BufferedReader(new FileReader(filename))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int comment = line.indexOf('#');
+                if (comment >= 0) {
+                    line = line.substring(0, comment);
+                }
+                String[] fields = line.trim().split("\\s+");
+                if (fields.length == 2) {
+                    evaluator.setWeight(fields[0], Double.parseDouble(fields[1]));
+                }
+            }
+            MyTools.print("Loaded evaluation weights from " + filename + ".");
+        } catch (Exception e) {
+            MyTools.error(e.getMessage());
+        }
+        return evaluator;
+    }
+
+    private void setWeight(String name, double value) {
+        if (name.equals("open2")) {
+            open2 = value;
+        } else if (name.equals("open3")) {
+            open3 = value;
+        } else if (name.equals("open4")) {
+            open4 = value;
+        } else if (name.equals("tempo")) {
+            tempo = value;
+        } else {
+            MyTools.error("Unknown evaluation weight: " + name);
+        }
+    }
+
+    /**
+     * Evaluation in logit units (z above) for a player, in one pass over the lines.
+     * The game must not be over.
+     *
+     * @param board
+     * @param player
+     * @return
+     */
+    public double score(PentagoBitboard board, int player) {
+        long own = board.getPieces(player);
+        long other = board.getPieces(1 - player);
+        int twos = 0;
+        int threes = 0;
+        int fours = 0;
+        for (int line = 0; line < PentagoLines.NUM_LINES; line++) {
+            long mask = PentagoLines.mask(line);
+            int own_count = Long.bitCount(own & mask);
+            int other_count = Long.bitCount(other & mask);
+            // Signed count of the colour that has the line to itself
+            int sign = (other_count == 0) ? 1 : (own_count == 0) ? -1 : 0;
+            int count = own_count + other_count;
+            if (count == 2) {
+                twos += sign;
+            } else if (count == 3) {
+                threes += sign;
+            } else if (count == 4) {
+                fours += sign;
+            }
+        }
+        double z = open2 * twos + open3 * threes + open4 * fours;
+        return board.getTurnPlayer() == player ? z + tempo : z;
+    }
+
+    /**
+     * Estimated probability that a player wins from a position.
+     *
+     * @param board  game not over
+     * @param player
+     * @return
+     */
+    public double winProbability(PentagoBitboard board, int player) {
+        return 1 / (1 + Math.exp(-score(board, player)));
+    }
+}
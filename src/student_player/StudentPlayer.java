@@ -11,6 +11,11 @@ import pentago_twist.PentagoBoardState;
  */
 public class StudentPlayer extends PentagoPlayer {
 
+    // MCTS agent, kept across our moves so the search tree can be reused from one turn to the next
+    private MCTSExecuter agent;
+    // Alpha-beta agent (MyTools.USE_ALPHA_BETA), kept for its transposition table and move ordering history
+    private AlphaBetaSearch alpha_beta_agent;
+
     /**
      * You must modify this constructor to return your student number. This is
      * important, because this is what the code that runs the competition uses to
@@ -37,6 +42,20 @@ public class StudentPlayer extends PentagoPlayer {
             time_allowed = MyTools.FIRST_MOVE_TIME;
         }
 
+        // Search with alpha-beta, if selected. The search finds immediate wins and avoids immediate losses itself,
+        // so the heuristics below are only used with MCTS.
+        if (MyTools.USE_ALPHA_BETA) {
+            MyTools.print("Run alpha-beta agent.");
+            if (alpha_beta_agent == null) {
+                alpha_beta_agent = new AlphaBetaSearch();
+            }
+            alpha_beta_agent.setStartTime(start_time);
+            alpha_beta_agent.setTimeAllowed(time_allowed);
+            Move myMove = alpha_beta_agent.getOptimalMove(boardState);
+            MyTools.print(String.format("Found move in %f", (System.currentTimeMillis() - start_time) / 1000f));
+            return myMove;
+        }
+
         // Determine if there is a simple move to win the game.
         WinNextHeuristic wnh = new WinNextHeuristic();
         PentagoMove win_next_move = wnh.getWinNextMove(boardState);
@@ -55,7 +74,9 @@ public class StudentPlayer extends PentagoPlayer {
 
         // Find optimal move using Monte Carlo Tree Search (MCTS)
         MyTools.print("Run MCTS agent.");
-        MCTSExecuter agent = new MCTSExecuter();
+        if (agent == null) {
+            agent = new MCTSExecuter();
+        }
         agent.setStartTime(start_time);
         agent.setTimeAllowed(time_allowed);
 
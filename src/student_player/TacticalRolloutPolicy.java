@@ -0,0 +1,166 @@
+package student_player;
+
+import pentago_twist.PentagoBitboard;
+import pentago_twist.PentagoLines;
+
+public class TacticalRolloutPolicy implements RolloutPolicy {
+
+    /**
+     * This TacticalRolloutPolicy.java class plays playout moves that look a little like real play:
+     * 1. take an immediate win if there is one,
+     * 2. otherwise block a square the opponent could win on next turn,
+     * 3. otherwise place on an empty square drawn with a weight given by the lines through it (line-occupancy
+     * patterns, see PATTERN_WEIGHTS), with a random twist.
+     * Playouts get shorter and their results say more about the position, for a higher cost per ply.
+     *
+     * Immediate wins are found on the bitboards: for each of the 8 twists, a line that the twist leaves with four
+     * of the player's pieces and none of the opponent's is won by placing on the square that ends up in the gap,
+     * unless the twist also gives the opponent five in a row (a draw).
+     * Everything is done with bit operations and table lookups, nothing is allocated.
+     */
+
+    private static final int NONE = -1;
+
+    // Weight added to an empty square by each line through it, by [player's pieces][opponent's pieces] on the line:
+    // extending our own lines and blocking the opponent's count, lines both players are on are dead
+    private static final int[][] PATTERN_WEIGHTS = {
+            {1, 1, 3, 10, 30, 0},
+            {1, 0, 0, 0, 0, 0},
+            {3, 0, 0, 0, 0, 0},
+            {12, 0, 0, 0, 0, 0},
+            {40, 0, 0, 0, 0, 0},
+            {0, 0, 0, 0, 0, 0},
+    };
+
+    // [op][square after a twist of its quadrant] -> square it came from
+    private static final int[][] UNTWISTED = new int[2][PentagoBitboard.NUM_SQUARES];
+
+    static {
+        for (int op = 0; op < 2; op++) {
+            for (int sq = 0; sq < PentagoBitboard.NUM_SQUARES; sq++) {
+                long moved = PentagoBitboard.twist(1L << sq, PentagoBitboard.quadrantOf(sq), op);
+                UNTWISTED[op][Long.numberOfTrailingZeros(moved)] = sq;
+            }
+        }
+    }
+
+    private int[] squares = new int[PentagoBitboard.NUM_SQUARES];
+    private int[] cumulative = new int[PentagoBitboard.NUM_SQUARES];
+    private boolean reject_noop_twists;
+
+    /**
+     * Constructor.
+     *
+     * @param reject_noop_twists redraw random twists that leave their quadrant unchanged
+     */
+    public TacticalRolloutPolicy(boolean reject_noop_twists) {
+        this.reject_noop_twists = reject_noop_twists;
+    }
+
+    @Override
+    public int selectMove(PentagoBitboard board, RolloutEngine engine) {
+        long own = board.getPieces(board.getTurnPlayer());
+        long other = board.getPieces(1 - board.getTurnPlayer());
+
+        // 1. Win now
+        int move = findWinningMove(own, other, true);
+        if (move != NONE) {
+            return move;
+        }
+
+        long r = engine.nextLong();
+
+        // 2. Take the square the opponent needs (threats made by a twist alone cannot be blocked this way)
+        int threat = findWinningMove(other, own, false);
+        if (threat != NONE) {
+            return RandomRolloutPolicy.withRandomTwist(board, PentagoBitboard.moveSquare(threat), r, reject_noop_twists);
+        }
+
+        // 3. Weighted placement
+        int n = 0;
+        int total = 0;
+        for (long empty = board.getEmpty(); empty != 0; empty &= empty - 1) {
+            int sq = Long.numberOfTrailingZeros(empty);
+            int weight = 1;
+            for (int line : PentagoLines.linesThrough(sq)) {
+                weight += PATTERN_WEIGHTS[PentagoLines.count(own, line)][PentagoLines.count(other, line)];
+            }
+            total += weight;
+            squares[n] = sq;
+            cumulative[n] = total;
+            n++;
+        }
+        int pick = (int) (((r >>> 32) * total) >>> 32);
+        int i = 0;
+        while (cumulative[i] <= pick) {
+            i++;
+        }
+        return RandomRolloutPolicy.withRandomTwist(board, squares[i], r, reject_noop_twists);
+    }
+
+    /**
+     * Look for a move that makes five in a row for a player (also used by AlphaBetaSearch), and not for the opponent
+     * too: a twist that completes fives for both players is a draw, so the other twists are tried instead.
+     * The game must not be over.
+     *
+     * @param own        the player's pieces
+     * @param other      the opponent's pieces
+     * @param twist_only also return wins made by the twist alone (any placement)
+     * @return encoded move, or NONE
+     */
+    static int findWinningMove(long own, long other, boolean twist_only) {
+        if (Long.bitCount(own) < 4) {
+            return NONE;
+        }
+        // Lines away from the twisted quadrant are the same whatever the twist: check them once, untwisted
+        for (int line = 0; line < PentagoLines.NUM_LINES; line++) {
+            long mask = PentagoLines.mask(line);
+            long missing = mask & ~own;
+            if ((other & mask) == 0 && missing != 0 && (missing & (missing - 1)) == 0) {
+                for (int quad = 0; quad < PentagoBitboard.NUM_QUADS; quad++) {
+                    if ((mask & (PentagoBitboard.QUAD_MASK << (quad * PentagoBitboard.QUAD_SQUARES))) != 0) {
+                        continue; // a line of five always misses at least one quadrant, twist one of those
+                    }
+                    for (int op = 0; op < 2; op++) {
+                        if (!givesFive(other, quad, op)) {
+                            return PentagoBitboard.encodeMove(Long.numberOfTrailingZeros(missing), quad, op);
+                        }
+                    }
+                }
+            }
+        }
+        for (int quad = 0; quad < PentagoBitboard.NUM_QUADS; quad++) {
+            for (int op = 0; op < 2; op++) {
+                long twisted_own = PentagoBitboard.twist(own, quad, op);
+                long twisted_other = PentagoBitboard.twist(other, quad, op);
+                for (int line : PentagoLines.linesThroughQuadrant(quad)) {
+                    long mask = PentagoLines.mask(line);
+                    if ((twisted_other & mask) != 0) {
+                        continue;
+                    }
+                    long missing = mask & ~twisted_own;
+                    boolean wins = (missing == 0) ? twist_only : (missing & (missing - 1)) == 0;
+                    if (wins && givesFive(other, quad, op)) {
+                        break; // every win with this twist is a draw
+                    }
+                    if (missing == 0 && twist_only) {
+                        long empty = ~(own | other) & PentagoBitboard.FULL_BOARD;
+                        return PentagoBitboard.encodeMove(Long.numberOfTrailingZeros(empty), quad, op);
+                    }
+                    if (missing != 0 && (missing & (missing - 1)) == 0) {
+                        // The gap is empty after the twist, so the square that lands there is empty now
+                        int gap = Long.numberOfTrailingZeros(missing);
+                        int sq = (PentagoBitboard.quadrantOf(gap) == quad) ? UNTWISTED[op][gap] : gap;
+                        return PentagoBitboard.encodeMove(sq, quad, op);
+                    }
+                }
+            }
+        }
+        return NONE;
+    }
+
+    // Whether a twist gives the opponent five in a row (only the lines crossing the quadrant can change)
+    private static boolean givesFive(long other, int quad, int op) {
+        return PentagoLines.hasFive(PentagoBitboard.twist(other, quad, op), PentagoLines.linesThroughQuadrant(quad));
+    }
+}
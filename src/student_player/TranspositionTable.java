@@ -0,0 +1,165 @@
+package student_player;
+
+import java.util.Arrays;
+
+public class TranspositionTable {
+
+    /**
+     * This TranspositionTable.java class is a fixed-size cache of searched positions, for AlphaBetaSearch.
+     * Everything is kept in one long[]: an entry is two longs, (key XOR data) and data, where data packs the score,
+     * best move, depth, bound and the search it was stored in (see pack()).
+     *
+     * - Buckets: a key maps to a bucket of two entries. The first is depth-preferred: it keeps the deepest search of
+     * the positions that map there (until a new search starts). The second is always replaced, so recent positions
+     * are still found when the first is taken by a deeper one.
+     * - Lockless: several searchers can share a table without locks. Two threads writing the same entry at once (or
+     * a 64-bit write torn in two) leave a key XOR data that does not match the data, and such an entry is not found
+     * by probe(). An entry is then lost at worst, never returned for the wrong position.
+     *
+     * The size is given in MB (see MyTools.TT_SIZE_MB) and rounded down to a power of two buckets.
+     */
+
+    // Bounds of a stored score
+    public static final int EXACT = 0;
+    public static final int LOWER = 1; // score >= stored score (cutoff)
+    public static final int UPPER = 2; // score <= stored score (no move raised alpha)
+
+    public static final long NOT_FOUND = 0;
+
+    private static final int LONGS_PER_ENTRY = 2;
+    private static final int ENTRIES_PER_BUCKET = 2;
+    private static final int LONGS_PER_BUCKET = LONGS_PER_ENTRY * ENTRIES_PER_BUCKET;
+    private static final int BYTES_PER_BUCKET = LONGS_PER_BUCKET * 8;
+
+    // Data layout: score (32 bits) | move + 1 (10) | depth (7) | bound (2) | age (8) | valid (1)
+    private static final int MOVE_SHIFT = 32;
+    private static final int DEPTH_SHIFT = 42;
+    private static final int BOUND_SHIFT = 49;
+    private static final int AGE_SHIFT = 51;
+    private static final long VALID = 1L << 63; // so that no stored data is NOT_FOUND
+    private static final int AGE_MASK = 0xFF;
+
+    private final long[] table;
+    private final int bucket_mask;
+    private int age; // set by the thread that starts the searchers, before they start
+
+    /**
+     * Constructor.
+     *
+     * @param size_mb memory for the table, in MB (at least one bucket)
+     */
+    public TranspositionTable(int size_mb) {
+        long buckets = Math.max(1, ((long) size_mb << 20) / BYTES_PER_BUCKET);
+        int bits = Math.min(63 - Long.numberOfLeadingZeros(buckets), 30 - Integer.numberOfTrailingZeros(LONGS_PER_BUCKET));
+        table = new long[(1 << bits) * LONGS_PER_BUCKET];
+        bucket_mask = (1 << bits) - 1;
+        MyTools.print("Transposition table: " + (1 << bits) + " buckets, " + ((long) table.length * 8 >> 20) + " MB.");
+    }
+
+    /**
+     * Start a new search: entries stored before can now be replaced by shallower ones.
+     */
+    public void newSearch() {
+        age = (age + 1) & AGE_MASK;
+    }
+
+    /**
+     * Remove all entries.
+     */
+    public void clear() {
+        Arrays.fill(table, 0);
+    }
+
+    /**
+     * Look up a position.
+     *
+     * @param key Zobrist key of the position
+     * @return packed data (read it with score(), move(), depth() and bound()), or NOT_FOUND
+     */
+    public long probe(long key) {
+        int base = bucketOf(key);
+        for (int i = base; i < base + LONGS_PER_BUCKET; i += LONGS_PER_ENTRY) {
+            // Read the data once: the check and the caller must see the same value
+            long data = table[i + 1];
+            if ((table[i] ^ data) == key && data != NOT_FOUND) {
+                return data;
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * Store the result of searching a position.
+     *
+     * @param key   Zobrist key of the position
+     * @param score score, already adjusted for the ply if it is a win or a loss
+     * @param move  best move (encoded), or -1
+     * @param depth depth searched
+     * @param bound EXACT, LOWER or UPPER
+     */
+    public void store(long key, int score, int move, int depth, int bound) {
+        int base = bucketOf(key);
+        long data = pack(score, move, depth, bound, age);
+        long deep = table[base + 1];
+        boolean same = (table[base] ^ deep) == key;
+        // Depth-preferred entry: same position, deeper (or as deep) search, or left by an earlier search
+        if (same || depth >= depth(deep) || ageOf(deep) != age) {
+            if (!same && deep != NOT_FOUND && ageOf(deep) == age) {
+                // Keep the one it pushes out in the other entry
+                table[base + 2] = table[base];
+                table[base + 3] = deep;
+            }
+            table[base] = key ^ data;
+            table[base + 1] = data;
+        } else {
+            table[base + 2] = key ^ data;
+            table[base + 3] = data;
+        }
+    }
+
+    private int bucketOf(long key) {
+        return ((int) (key >>> 32) & bucket_mask) * LONGS_PER_BUCKET;
+    }
+
+    /**
+     * Packed data.
+     */
+    //-------------------------------------------
+    private static long pack(int score, int move, int depth, int bound, int age) {
+        return (score & 0xFFFFFFFFL) | ((long) (move + 1) << MOVE_SHIFT) | ((long) depth << DEPTH_SHIFT)
+                | ((long) bound << BOUND_SHIFT) | ((long) age << AGE_SHIFT) | VALID;
+    }
+
+    public static int score(long data) {
+        return (int) data;
+    }
+
+    public static int move(long data) {
+        return (int) ((data >>> MOVE_SHIFT) & 0x3FF) - 1;
+    }
+
+    public static int depth(long data) {
+        return (int) ((data >>> DEPTH_SHIFT) & 0x7F);
+    }
+
+    public static int bound(long data) {
+        return (int) ((data >>> BOUND_SHIFT) & 0x3);
+    }
+
+    private static int ageOf(long data) {
+        return (int) ((data >>> AGE_SHIFT) & AGE_MASK);
+    }
+    //-------------------------------------------
+
+    /**
+     * Getters for this class.
+     */
+
+    public int getBuckets() {
+        return bucket_mask + 1;
+    }
+
+    public long getSizeBytes() {
+        return (long) table.length * 8;
+    }
+}
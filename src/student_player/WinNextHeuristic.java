@@ -2,8 +2,7 @@ package student_player;
 
 import pentago_twist.PentagoBoardState;
 import pentago_twist.PentagoMove;
-
-import java.util.ArrayList;
+import pentago_twist.PentagoMoveList;
 
 public class WinNextHeuristic {
 
@@ -17,16 +16,18 @@ public class WinNextHeuristic {
      * @return
      */
     public PentagoMove getWinNextMove(PentagoBoardState pbs) {
-        // Fetch all legal moves
-        ArrayList<PentagoMove> all_moves = pbs.getAllLegalMoves();
-        for(PentagoMove pm : all_moves) {
-            // Perform possible move on clone
-            PentagoBoardState pbs_clone = (PentagoBoardState) pbs.clone();
-            pbs_clone.processMove(pm);
+        // Fetch all legal moves (encoded, no PentagoMove objects needed to try them)
+        PentagoMoveList all_moves = new PentagoMoveList();
+        pbs.getAllLegalMoves(all_moves);
+        for(int i = 0; i < all_moves.size(); i++) {
+            // Perform possible move in place, then take it back
+            pbs.doMove(all_moves.get(i));
+            int winner = pbs.getWinner();
+            pbs.undoMove();
             // Check if moves makes you win
-            if(pbs_clone.getWinner() == pbs.getTurnPlayer()) {
+            if(winner == pbs.getTurnPlayer()) {
                 // if you can win with this move, use it!
-                return pm;
+                return PentagoMove.decode(all_moves.get(i), pbs.getTurnPlayer());
             }
         }
 
@@ -0,0 +1,112 @@
+package student_player;
+
+import boardgame.Board;
+import pentago_twist.PentagoBitboard;
+
+import java.util.Random;
+
+public class TacticalRolloutPolicyTest {
+
+    /**
+     * This TacticalRolloutPolicyTest.java class checks TacticalRolloutPolicy.findWinningMove against playing every
+     * move. Run it with "ant test".
+     */
+
+    // Positions (encoded moves from the start) where the side to move has a twist that completes both fives
+    private static final int[] WIN_AND_DRAW = {323, 483, 395, 351, 13, 89, 22, 162, 340, 419, 145}; // and a real win
+    private static final int[] DRAW_ONLY = {470, 288, 468, 338, 31, 277, 147, 289, 354, 455, 345, 449, 405}; // no win
+
+    private static int failures = 0;
+
+    public static void main(String[] args) {
+        testTwistCompletingBothFives();
+        testAgainstAllMoves();
+        if (failures > 0) {
+            System.out.println(failures + " failure(s).");
+            System.exit(1);
+        }
+        System.out.println("All tests passed.");
+    }
+
+    private static void testTwistCompletingBothFives() {
+        PentagoBitboard board = replay(WIN_AND_DRAW);
+        check(hasMoveWithWinner(board, Board.DRAW), "a move completes both fives");
+        check(hasMoveWithWinner(board, board.getTurnPlayer()), "a winning move exists");
+        check(isWinningMove(board, findWinningMove(board, true)), "the winning move is found, not the drawing one");
+
+        board = replay(DRAW_ONLY);
+        check(hasMoveWithWinner(board, Board.DRAW), "a move completes both fives");
+        check(!hasMoveWithWinner(board, board.getTurnPlayer()), "no winning move exists");
+        check(findWinningMove(board, true) < 0, "the drawing move is not returned as a win");
+    }
+
+    // Every move returned wins, and a move is returned whenever a win exists (random games, fixed seed)
+    private static void testAgainstAllMoves() {
+        Random random = new Random(424);
+        int[] moves = new int[PentagoBitboard.NUM_SQUARES * PentagoBitboard.NUM_QUADS * 2];
+        for (int game = 0; game < 2000; game++) {
+            PentagoBitboard board = new PentagoBitboard();
+            while (board.getWinner() == Board.NOBODY) {
+                int move = findWinningMove(board, true);
+                if (move >= 0) {
+                    check(isWinningMove(board, move), "returned move wins");
+                } else {
+                    check(!hasMoveWithWinner(board, board.getTurnPlayer()), "no win is missed");
+                }
+                move = findWinningMove(board, false);
+                if (move >= 0) {
+                    check(isWinningMove(board, move), "returned placement wins");
+                }
+                int n = board.generateMoves(moves);
+                board.doMove(moves[random.nextInt(n)]);
+            }
+        }
+    }
+
+    private static PentagoBitboard replay(int[] moves) {
+        PentagoBitboard board = new PentagoBitboard();
+        for (int move : moves) {
+            board.doMove(move);
+        }
+        return board;
+    }
+
+    private static int findWinningMove(PentagoBitboard board, boolean twist_only) {
+        int player = board.getTurnPlayer();
+        return TacticalRolloutPolicy.findWinningMove(board.getPieces(player), board.getPieces(1 - player), twist_only);
+    }
+
+    private static boolean isWinningMove(PentagoBitboard board, int move) {
+        if (move < 0) {
+            return false;
+        }
+        int player = board.getTurnPlayer();
+        board.doMove(move);
+        boolean wins = board.getWinner() == player;
+        board.undoMove();
+        return wins;
+    }
+
+    private static boolean hasMoveWithWinner(PentagoBitboard board, int winner) {
+        int[] moves = new int[PentagoBitboard.NUM_SQUARES * PentagoBitboard.NUM_QUADS * 2];
+        int n = board.generateMoves(moves);
+        for (int i = 0; i < n; i++) {
+            board.doMove(moves[i]);
+            boolean found = board.getWinner() == winner;
+            board.undoMove();
+            if (found) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void check(boolean condition, String what) {
+        if (!condition) {
+            failures++;
+            if (failures <= 10) {
+                System.out.println("FAILED: " + what);
+            }
+        }
+    }
+}